@@ -0,0 +1,145 @@
+package projects.bench;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import projects.dao.DbConnection;
+import projects.dao.PoolConfig;
+import projects.dao.ProjectDao;
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/**
+ * An embedded, in-memory H2 database running in MySQL compatibility mode. It stands in for the
+ * MySQL server in the end-to-end benchmarks, so they run anywhere without installing a database.
+ * The absolute numbers are not MySQL numbers (there is no network hop), but the relative cost of
+ * the DAO code paths, the query counts and the allocation per operation are what the suites are
+ * for. Each JMH fork is its own JVM, so each fork gets a fresh database.
+ */
+public class BenchmarkDatabase {
+	public static final String URL = "jdbc:h2:mem:projects_bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+	public static final int CATEGORY_COUNT = 10;
+
+	// same tables as src/main/resources/projects-schema.sql
+	private static final String[] SCHEMA = {
+			"DROP TABLE IF EXISTS project_category",
+			"DROP TABLE IF EXISTS material",
+			"DROP TABLE IF EXISTS step",
+			"DROP TABLE IF EXISTS category",
+			"DROP TABLE IF EXISTS project",
+			"CREATE TABLE project (project_id INT NOT NULL AUTO_INCREMENT, project_name VARCHAR(128) NOT NULL, "
+					+ "estimated_hours DECIMAL(7,2), actual_hours DECIMAL(7,2), difficulty INT, notes TEXT, "
+					+ "PRIMARY KEY (project_id))",
+			// H2 doesn't add the primary key to a secondary index, so the keyset index is kept beside the unique one
+			"CREATE UNIQUE INDEX project_name ON project (project_name)",
+			"CREATE INDEX project_name_id ON project (project_name, project_id)",
+			"CREATE TABLE category (category_id INT NOT NULL AUTO_INCREMENT, category_name VARCHAR(128) NOT NULL, "
+					+ "PRIMARY KEY (category_id))",
+			"CREATE TABLE step (step_id INT NOT NULL AUTO_INCREMENT, project_id INT NOT NULL, step_text TEXT NOT NULL, "
+					+ "step_order INT NOT NULL, PRIMARY KEY (step_id), "
+					+ "FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE)",
+			"CREATE INDEX project_step_order ON step (project_id, step_order)",
+			"CREATE TABLE material (material_id INT NOT NULL AUTO_INCREMENT, project_id INT NOT NULL, "
+					+ "material_name VARCHAR(128) NOT NULL, num_required INT, cost DECIMAL(7,2), PRIMARY KEY (material_id), "
+					+ "FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE)",
+			"CREATE TABLE project_category (project_id INT NOT NULL, category_id INT NOT NULL, "
+					+ "FOREIGN KEY (category_id) REFERENCES category (category_id) ON DELETE CASCADE, "
+					+ "FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE, "
+					+ "UNIQUE (project_id, category_id))",
+			"CREATE TABLE import_checkpoint (source VARCHAR(512) NOT NULL, byte_offset BIGINT NOT NULL, "
+					+ "line_number BIGINT NOT NULL, projects_imported BIGINT NOT NULL, PRIMARY KEY (source))" };
+
+	/**
+	 * Points {@link DbConnection} at a fresh embedded database, creates the tables and seeds them.
+	 *
+	 * @param projects            The number of projects.
+	 * @param materialsPerProject The number of materials on each project.
+	 * @param stepsPerProject     The number of steps on each project.
+	 * @return The IDs of the seeded projects, in insert order.
+	 */
+	public static List<Integer> start(int projects, int materialsPerProject, int stepsPerProject) {
+		PoolConfig config = new PoolConfig();
+		config.setMinSize(1);
+		config.setMaxSize(Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+		DbConnection.configureUrl(URL);
+		DbConnection.configurePool(config);
+
+		try (Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement()) {
+			for (String sql : SCHEMA) {
+				stmt.execute(sql);
+			}
+
+			for (int category = 1; category <= CATEGORY_COUNT; category++) {
+				stmt.execute("INSERT INTO category (category_name) VALUES ('Category " + category + "')");
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+
+		ProjectDao dao = new ProjectDao();
+		List<Integer> projectIds = new ArrayList<>(projects);
+		List<Project> batch = new ArrayList<>();
+
+		for (int index = 0; index < projects; index++) {
+			batch.add(newProject(index, materialsPerProject, stepsPerProject));
+
+			if (batch.size() == 500 || index == projects - 1) {
+				dao.insertProjectGraphs(batch).forEach(project -> projectIds.add(project.getProjectId()));
+				batch.clear();
+			}
+		}
+
+		return projectIds;
+	}
+
+	public static void stop() {
+		try (Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement()) {
+			stmt.execute("SHUTDOWN");
+		} catch (SQLException e) {
+			// the database is going away either way
+		}
+
+		DbConnection.shutdown();
+	}
+
+	// builds a detached project graph with the given number of children and two categories
+	public static Project newProject(int index, int materials, int steps) {
+		Project project = new Project();
+		project.setProjectName("Project " + index);
+		project.setEstimatedHours(new BigDecimal("12.50"));
+		project.setActualHours(new BigDecimal("14.25"));
+		project.setDifficulty(1 + index % 5);
+		project.setNotes("Notes for project " + index + ". Measure twice, cut once.");
+
+		for (int material = 0; material < materials; material++) {
+			Material row = new Material();
+			row.setMaterialName("Material " + material);
+			row.setNumRequired(1 + material % 4);
+			row.setCost(new BigDecimal("3.99"));
+			project.getMaterials().add(row);
+		}
+
+		for (int step = 0; step < steps; step++) {
+			Step row = new Step();
+			row.setStepText("Step " + step + " of project " + index);
+			project.getSteps().add(row);
+		}
+
+		for (int category = 0; category < 2; category++) {
+			Category row = new Category();
+			row.setCategoryId(1 + (index + category) % CATEGORY_COUNT);
+			project.getCategories().add(row);
+		}
+
+		return project;
+	}
+}
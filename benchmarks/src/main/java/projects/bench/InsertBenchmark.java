@@ -0,0 +1,82 @@
+package projects.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+
+/**
+ * Rows per second for the single-row insertProject path against the batched insertProjects path.
+ * Both benchmarks count one operation per inserted row, so the scores compare directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+	private static final int ROWS = 1000;
+
+	@Param({ "100", "500" })
+	public int insertBatchSize;
+
+	private final ProjectDao dao = new ProjectDao();
+
+	// project names are unique, so every invocation numbers its projects on from the last one
+	private final AtomicInteger nextIndex = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void start() {
+		BenchmarkDatabase.start(0, 0, 0);
+		dao.setInsertBatchSize(insertBatchSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		BenchmarkDatabase.stop();
+	}
+
+	private List<Project> newProjects() {
+		List<Project> projects = new ArrayList<>(ROWS);
+		int first = nextIndex.getAndAdd(ROWS);
+
+		for (int index = first; index < first + ROWS; index++) {
+			projects.add(BenchmarkDatabase.newProject(index, 0, 0));
+		}
+
+		return projects;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void singleRowInserts() {
+		for (Project project : newProjects()) {
+			dao.insertProject(project);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public List<Project> batchedInserts() {
+		return dao.insertProjects(newProjects());
+	}
+}
@@ -0,0 +1,98 @@
+package projects.bench;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.dao.ProjectDao;
+import projects.dao.ProjectFetchMode;
+import projects.entity.Page;
+import projects.entity.Project;
+
+/**
+ * End-to-end ProjectDao read and update paths against the embedded database. The seed size is set
+ * with the projects, materials and steps parameters, for example
+ * {@code -p projects=10000 -p materials=20 -p steps=30}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectDaoBenchmark {
+	@Param({ "1000" })
+	public int projects;
+
+	@Param({ "10" })
+	public int materials;
+
+	@Param({ "10" })
+	public int steps;
+
+	// how many projects fetchProjectsByIds loads per call
+	@Param({ "50" })
+	public int batchSize;
+
+	private final ProjectDao dao = new ProjectDao();
+	private final Random random = new Random(42);
+	private List<Integer> projectIds;
+
+	@Setup(Level.Trial)
+	public void seed() {
+		projectIds = BenchmarkDatabase.start(projects, materials, steps);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		BenchmarkDatabase.stop();
+	}
+
+	private Integer randomProjectId() {
+		return projectIds.get(random.nextInt(projectIds.size()));
+	}
+
+	@Benchmark
+	public Project fetchProjectById() {
+		return dao.fetchProjectById(randomProjectId(), ProjectFetchMode.SEPARATE_QUERIES).orElseThrow();
+	}
+
+	@Benchmark
+	public List<Project> fetchProjectsByIds() {
+		int from = random.nextInt(Math.max(1, projectIds.size() - batchSize));
+		return dao.fetchProjectsByIds(projectIds.subList(from, Math.min(projectIds.size(), from + batchSize)));
+	}
+
+	@Benchmark
+	public Page<Project> fetchFirstProjectPage() {
+		return dao.fetchProjectPage(null, 100);
+	}
+
+	@Benchmark
+	public boolean modifyProjectDetails() {
+		Project project = new Project();
+		project.setProjectId(randomProjectId());
+		project.setProjectName("Renamed " + project.getProjectId());
+		project.setEstimatedHours(new BigDecimal("10.00"));
+		project.setActualHours(new BigDecimal("11.00"));
+		project.setDifficulty(3);
+		project.setNotes("Updated notes");
+
+		return dao.modifyProjectDetails(project);
+	}
+}
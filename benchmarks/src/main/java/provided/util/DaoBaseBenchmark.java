@@ -0,0 +1,121 @@
+package provided.util;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import projects.entity.Material;
+import projects.entity.Project;
+
+/**
+ * Micro benchmarks for the DaoBase helpers that run for every row or every parameter: extract,
+ * setParameter and camelCaseToSnakeCase. This class lives in the provided.util package so it can
+ * reach the package-private name conversion. The result sets come from an embedded H2 database so
+ * that the driver calls are real.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBaseBenchmark {
+	private static final int ROWS = 100;
+
+	private final BenchDao dao = new BenchDao();
+	private Connection conn;
+	private ResultSet projectRows;
+	private ResultSet materialRows;
+	private PreparedStatement parameterStmt;
+
+	// DaoBase is abstract, this subclass only exists to call it
+	private static class BenchDao extends DaoBase {
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		conn = DriverManager.getConnection("jdbc:h2:mem:dao_base_bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE project (project_id INT PRIMARY KEY, project_name VARCHAR(128), "
+					+ "estimated_hours DECIMAL(7,2), actual_hours DECIMAL(7,2), difficulty INT, notes TEXT)");
+			stmt.execute("CREATE TABLE material (material_id INT PRIMARY KEY, project_id INT, "
+					+ "material_name VARCHAR(128), num_required INT, cost DECIMAL(7,2))");
+
+			for (int row = 1; row <= ROWS; row++) {
+				stmt.execute("INSERT INTO project VALUES (" + row + ", 'Project " + row
+						+ "', 10.50, 12.25, 3, 'Some notes')");
+				stmt.execute("INSERT INTO material VALUES (" + row + ", 1, 'Material " + row + "', 4, 2.99)");
+			}
+		}
+
+		projectRows = scrollable("SELECT * FROM project");
+		materialRows = scrollable("SELECT * FROM material");
+		parameterStmt = conn.prepareStatement("SELECT ?, ?, ?, ?, ?");
+	}
+
+	private ResultSet scrollable(String sql) throws SQLException {
+		Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		return stmt.executeQuery(sql);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		conn.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void extractProject(Blackhole blackhole) throws SQLException {
+		projectRows.beforeFirst();
+
+		while (projectRows.next()) {
+			blackhole.consume(dao.extract(projectRows, Project.class));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void extractMaterial(Blackhole blackhole) throws SQLException {
+		materialRows.beforeFirst();
+
+		while (materialRows.next()) {
+			blackhole.consume(dao.extract(materialRows, Material.class));
+		}
+	}
+
+	// one operation binds the five parameters of an insertProject
+	@Benchmark
+	public void setProjectParameters() throws SQLException {
+		dao.setParameter(parameterStmt, 1, "Project name", String.class);
+		dao.setParameter(parameterStmt, 2, BigDecimal.TEN, BigDecimal.class);
+		dao.setParameter(parameterStmt, 3, null, BigDecimal.class);
+		dao.setParameter(parameterStmt, 4, 3, Integer.class);
+		dao.setParameter(parameterStmt, 5, "Notes", String.class);
+	}
+
+	@Benchmark
+	public String camelCaseToSnakeCase() {
+		return DaoBase.camelCaseToSnakeCase("estimatedHours");
+	}
+}
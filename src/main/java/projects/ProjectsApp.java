@@ -2,19 +2,38 @@
 package projects;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
+import projects.dao.DbConnection;
+import projects.entity.ImportProgress;
+import projects.entity.Page;
 import projects.entity.Project;
-import projects.exception.DbException;
+import projects.entity.ProjectKey;
+import projects.entity.ProjectSummary;
+import projects.importer.InputFields;
+import projects.metrics.Metrics;
 import projects.service.ProjectService;
+import projects.web.ProjectHttpServer;
+import provided.util.DaoBase;
 
 
 public class ProjectsApp {
 	private Scanner scanner = new Scanner(System.in);
 	private ProjectService projectService = new ProjectService();
 	private Project curProject;
+	
+	// how many projects listProjects reads from the database at a time
+	private static final int LIST_PAGE_SIZE = 100;
+	
+	private static final int DEFAULT_HTTP_PORT = 8080;
+	
+	// how often an import prints its progress
+	private static final Duration IMPORT_REPORT_INTERVAL = Duration.ofSeconds(1);
 	//@formatter:off
 	
 	// adding homework instructions week10 list of projects
@@ -35,8 +54,101 @@ public class ProjectsApp {
 	
 	// method that processes the menu
 	
-	public static void main(String[] args) {
-		new ProjectsApp().processUserSelections();
+	// with --http <port> the JSON front end runs alongside the menu, add --headless to run it without the menu
+	// --metrics <seconds> prints latency and database metrics on that interval, they are always available over JMX
+	// --slow-ms <millis> logs every statement that takes at least that long and captures its EXPLAIN plan
+	// --import <file> imports the projects in a .csv or .jsonl file and exits, or starts the server after it if --http is given
+	public static void main(String[] args) throws Exception {
+		Integer httpPort = null;
+		boolean headless = false;
+		Path importFile = null;
+		
+		for(int index = 0; index < args.length; index++) {
+			switch(args[index]) {
+			case "--http":
+				if(index + 1 >= args.length) {
+					throw new IllegalArgumentException("--http needs a port number");
+				}
+				httpPort = Integer.valueOf(args[++index]);
+				break;
+			case "--headless":
+				headless = true;
+				break;
+			case "--metrics":
+				if(index + 1 >= args.length) {
+					throw new IllegalArgumentException("--metrics needs an interval in seconds");
+				}
+				long seconds = Long.parseLong(args[++index]);
+				if(seconds < 1) {
+					throw new IllegalArgumentException("--metrics needs an interval of at least one second");
+				}
+				Metrics.startReporting(Duration.ofSeconds(seconds), System.out);
+				break;
+			case "--slow-ms":
+				if(index + 1 >= args.length) {
+					throw new IllegalArgumentException("--slow-ms needs a threshold in milliseconds");
+				}
+				DaoBase.setSlowStatementThresholdMillis(Long.parseLong(args[++index]));
+				break;
+			case "--import":
+				if(index + 1 >= args.length) {
+					throw new IllegalArgumentException("--import needs a file name");
+				}
+				importFile = Path.of(args[++index]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[index]);
+			}
+		}
+		
+		if(headless && Objects.isNull(httpPort)) {
+			httpPort = DEFAULT_HTTP_PORT;
+		}
+		
+		ProjectsApp app = new ProjectsApp();
+		
+		if(Objects.nonNull(importFile)) {
+			app.importProjects(importFile);
+			
+			if(Objects.isNull(httpPort)) {
+				app.projectService.close();
+				DbConnection.shutdown();
+				return;
+			}
+		}
+		
+		if(Objects.isNull(httpPort)) {
+			app.processUserSelections();
+			return;
+		}
+		
+		// the server shares the app's service so both see the same project cache
+		ProjectHttpServer server = new ProjectHttpServer(app.projectService, httpPort);
+		server.start();
+		System.out.println("Serving projects as JSON on http://localhost:" + server.getPort() + "/projects");
+		
+		if(headless) {
+			CountDownLatch stopped = new CountDownLatch(1);
+			
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				server.close();
+				app.projectService.close();
+				DbConnection.shutdown();
+				stopped.countDown();
+			}));
+			
+			stopped.await();
+			return;
+		}
+		
+		try {
+			app.processUserSelections();
+		}
+		finally {
+			server.close();
+			app.projectService.close();
+			DbConnection.shutdown();
+		}
 	}
 
 	/// proccessUsersSelections method, this displays menu selections, get selection from user and acts
@@ -120,21 +232,31 @@ private void deleteProject() {
 	
 		String notes = getStringInput("Enter the project notes [" + curProject.getNotes() + "]");
 		
-// wk 11 step 1) c. create a new project object
+// wk 11 step 1) c. edit a copy of the project, curProject may be the instance the service caches
 		
-	Project project = new Project();
+	Project project = curProject.copy();
 	
-// if the user input is not null add the value to the Project Object, if the user input IS NULL add the value from curProject
+// if the user input is not null set it on the copy, otherwise the current value stays and isn't written
 	
-	project.setProjectId(curProject.getProjectId());
-	project.setProjectName(Objects.isNull(projectName) ? curProject.getProjectName() : projectName) ;
+	if(Objects.nonNull(projectName)) {
+		project.setProjectName(projectName);
+	}
 	
-	project.setEstimatedHours(
-			Objects.isNull(estimatedHours) ? curProject.getEstimatedHours() : estimatedHours);
+	if(Objects.nonNull(estimatedHours)) {
+		project.setEstimatedHours(estimatedHours);
+	}
 	
-	project.setActualHours(Objects.isNull(actualHours) ? curProject.getActualHours() : actualHours );
-	project.setDifficulty(Objects.isNull(difficulty) ?  curProject.getDifficulty() : difficulty);
-	project.setNotes(Objects.isNull(notes) ? curProject.getNotes() : notes);
+	if(Objects.nonNull(actualHours)) {
+		project.setActualHours(actualHours);
+	}
+	
+	if(Objects.nonNull(difficulty)) {
+		project.setDifficulty(difficulty);
+	}
+	
+	if(Objects.nonNull(notes)) {
+		project.setNotes(notes);
+	}
 	
 // this is to pick up the changes by calling
 	projectService.modifyProjectDetails(project);
@@ -155,15 +277,47 @@ private void selectProject() {
 
 // this is my list project method
 
+// pages through the projects so only one page is ever held in memory
+
 private void listProjects() {
-		List<Project> projects = projectService.fetchAllProjects();
-		
 		System.out.println("\nProjects:");
 		
-		projects.forEach(project -> System.out.println("   " + project.getProjectId() + ": " + project.getProjectName()));
+		ProjectKey after = null;
+		
+		do {
+			Page<ProjectSummary> page = projectService.fetchProjectSummaryPage(after, LIST_PAGE_SIZE, false);
+			
+			page.items().forEach(summary -> System.out.println("   " + summary.projectId() + ": " + summary.projectName()));
+			after = page.next();
+		} while(Objects.nonNull(after));
 		
 	}
 
+	// prints the throughput as the import goes, at most once a second, and a summary at the end
+	private void importProjects(Path file) {
+		System.out.println("Importing projects from " + file);
+		
+		long[] lastReport = { System.nanoTime() };
+		ImportProgress result = projectService.importProjects(file, progress -> {
+			long now = System.nanoTime();
+			
+			if(now - lastReport[0] >= IMPORT_REPORT_INTERVAL.toNanos()) {
+				lastReport[0] = now;
+				printImportProgress(progress);
+			}
+		});
+		
+		printImportProgress(result);
+		System.out.println("Import finished in " + result.elapsed().toMillis() + " ms.");
+	}
+	
+	private void printImportProgress(ImportProgress progress) {
+		System.out.printf("   %,d of %,d bytes, %,d projects, %,d materials, %,d steps, %,.0f projects/s, %,.0f rows/s%n",
+				progress.bytesImported(), progress.bytesTotal(), progress.projectsImported(),
+				progress.materialsImported(), progress.stepsImported(), progress.projectsPerSecond(),
+				progress.rowsPerSecond());
+	}
+
 // method for createProject step 3, part 2 homework	
 	private void createProject() {
 		 String projectName = getStringInput("Enter the project name");
@@ -191,21 +345,7 @@ private void listProjects() {
 	// Big decimal Method
 	
 	private BigDecimal getDecimalInput(String prompt) {
-		String input = getStringInput(prompt);
-		
-		if(Objects.isNull(input)){
-	return null;
-
-		}
-		try	{
-			return new BigDecimal(input).setScale(2);
-		}
-		catch(NumberFormatException e) {
-			throw new DbException(input + " is not a valid decimal number.");
-		}
-
-
-
+		return InputFields.parseDecimal(getStringInput(prompt));
 	}
 	
 // Called when user wants to Exit
@@ -251,20 +391,9 @@ private void listProjects() {
 	// 7b test value in the variable input
 	// 7c try/catch 2 test the value returned can be converted to an integer, catch should except a parameter or type numberformatexception
 	
+	// the conversion is shared with the importer, so a file is held to the same rules as the menu
 	private Integer getIntInput(String prompt) {
-		String input = getStringInput(prompt);
-		
-		if(Objects.isNull(input)) {
-			return null;
-		}
-		
-		try {
-			return Integer.valueOf(input);
-		}
-		catch(NumberFormatException e) {
-			throw new DbException(input + " is not a valid number. try agian");
-			}
-	
+		return InputFields.parseInteger(getStringInput(prompt));
 	}
 	
 // step 8 create getStringInput (this REALLY prints the prompt and gets the input from user) this will be called on by other input methods
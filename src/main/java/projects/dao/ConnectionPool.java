@@ -0,0 +1,478 @@
+package projects.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import projects.exception.DbException;
+import projects.metrics.LatencyHistogram;
+import provided.util.StatementCache;
+
+/**
+ * A bounded pool of MySQL connections. Callers get a connection from {@link #getConnection()} and
+ * close it exactly as they would close a {@link DriverManager} connection, normally with
+ * try-with-resources. Closing the connection handed out by the pool does not close the physical
+ * connection; it resets the session state (auto-commit, read-only, open transaction) and puts the
+ * connection back for the next caller.
+ *
+ * A semaphore limits the number of borrowed connections to the configured maximum. Each physical
+ * connection carries a {@link StatementCache} that the DAO uses to reuse prepared statements from
+ * one borrow to the next. Idle connections are kept in a LIFO deque so the most recently used (and warmest) connection is
+ * handed out first and the ones at the tail age out. A background housekeeping task closes idle
+ * connections past the idle timeout, tops the pool back up to the minimum size and reports
+ * connections that have been borrowed for longer than the leak detection threshold.
+ */
+public class ConnectionPool implements AutoCloseable {
+	private final String url;
+	private final PoolConfig config;
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+	private final Set<PooledEntry> borrowed = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed;
+
+	private final LongAdder acquireCount = new LongAdder();
+	private final LongAdder acquireWaitNanos = new LongAdder();
+	private final AtomicLong maxAcquireWaitNanos = new AtomicLong();
+	private final LatencyHistogram acquireTime = new LatencyHistogram();
+	private final LongAdder acquireTimeouts = new LongAdder();
+	private final LongAdder connectionsCreated = new LongAdder();
+	private final LongAdder connectionsClosed = new LongAdder();
+	private final LongAdder validationFailures = new LongAdder();
+	private final LongAdder leaksDetected = new LongAdder();
+
+	public ConnectionPool(String url, PoolConfig config) {
+		if (config.getMaxSize() < 1 || config.getMinSize() < 0 || config.getMinSize() > config.getMaxSize()) {
+			throw new DbException("Invalid pool size settings: " + config);
+		}
+
+		this.url = url;
+		this.config = config;
+		this.permits = new Semaphore(config.getMaxSize(), true);
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "projects-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long interval = config.getHousekeepingIntervalMillis();
+		housekeeper.scheduleWithFixedDelay(this::houseKeep, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection from the pool, waiting up to the acquire timeout for one to become free.
+	 * An idle connection is reused if it passes validation, otherwise a new physical connection is
+	 * opened.
+	 *
+	 * @return A connection that must be closed by the caller to return it to the pool.
+	 * @throws DbException Thrown if the pool is closed, the timeout expires or the connection cannot
+	 *                     be opened.
+	 */
+	public Connection getConnection() {
+		if (closed) {
+			throw new DbException("The connection pool has been closed");
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			if (!permits.tryAcquire(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+				acquireTimeouts.increment();
+				throw new DbException("Timed out after " + config.getAcquireTimeoutMillis()
+						+ "ms waiting for a connection (" + borrowed.size() + " of " + config.getMaxSize() + " in use)");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for a connection", e);
+		}
+
+		try {
+			PooledEntry entry = takeIdle();
+
+			if (entry == null) {
+				entry = createEntry();
+			}
+
+			long waited = System.nanoTime() - start;
+			acquireCount.increment();
+			acquireWaitNanos.add(waited);
+			maxAcquireWaitNanos.accumulateAndGet(waited, Math::max);
+			acquireTime.record(waited);
+
+			return entry.checkout();
+		} catch (SQLException e) {
+			permits.release();
+			throw new DbException("Unable to get a connection at " + url, e);
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	// pop idle connections until one is usable, closing the ones that are stale or broken
+	private PooledEntry takeIdle() {
+		PooledEntry entry;
+
+		while ((entry = idle.pollFirst()) != null) {
+			if (isUsable(entry)) {
+				return entry;
+			}
+
+			closePhysical(entry);
+		}
+
+		return null;
+	}
+
+	private boolean isUsable(PooledEntry entry) {
+		long now = System.nanoTime();
+
+		if (isExpired(entry, now)) {
+			return false;
+		}
+
+		if (now - entry.lastUsedNanos < TimeUnit.MILLISECONDS.toNanos(config.getValidateAfterIdleMillis())) {
+			return true;
+		}
+
+		try {
+			if (entry.physical.isValid(config.getValidationTimeoutSeconds())) {
+				return true;
+			}
+		} catch (SQLException e) {
+			// treated the same as a failed validation
+		}
+
+		validationFailures.increment();
+		return false;
+	}
+
+	private boolean isExpired(PooledEntry entry, long now) {
+		long maxLifetime = config.getMaxLifetimeMillis();
+		return maxLifetime > 0 && now - entry.createdNanos > TimeUnit.MILLISECONDS.toNanos(maxLifetime);
+	}
+
+	private PooledEntry createEntry() throws SQLException {
+		totalConnections.incrementAndGet();
+
+		try {
+			Connection physical = DriverManager.getConnection(url);
+			connectionsCreated.increment();
+			return new PooledEntry(physical);
+		} catch (SQLException | RuntimeException e) {
+			totalConnections.decrementAndGet();
+			throw e;
+		}
+	}
+
+	// called when the borrower closes its connection
+	private void release(PooledEntry entry) {
+		borrowed.remove(entry);
+
+		try {
+			if (closed || entry.physical.isClosed() || isExpired(entry, System.nanoTime())) {
+				closePhysical(entry);
+			} else {
+				resetSession(entry.physical);
+				entry.lastUsedNanos = System.nanoTime();
+				idle.offerFirst(entry);
+			}
+		} catch (SQLException e) {
+			closePhysical(entry);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/*
+	 * Put the session back the way DriverManager hands it out. A borrower that turned auto-commit off
+	 * and never committed (or threw before it could) must not leak its transaction to the next
+	 * borrower.
+	 */
+	private void resetSession(Connection physical) throws SQLException {
+		if (!physical.getAutoCommit()) {
+			physical.rollback();
+			physical.setAutoCommit(true);
+		}
+
+		if (physical.isReadOnly()) {
+			physical.setReadOnly(false);
+		}
+
+		physical.clearWarnings();
+	}
+
+	private void closePhysical(PooledEntry entry) {
+		totalConnections.decrementAndGet();
+		connectionsClosed.increment();
+
+		if (Objects.nonNull(entry.statementCache)) {
+			entry.statementCache.close();
+		}
+
+		try {
+			entry.physical.close();
+		} catch (SQLException e) {
+			// nothing more to do with a connection that will not close
+		}
+	}
+
+	private void houseKeep() {
+		try {
+			evictIdle();
+			fillToMinimum();
+			detectLeaks();
+		} catch (RuntimeException e) {
+			System.out.println("Connection pool housekeeping failed: " + e);
+		}
+	}
+
+	// walk the idle deque from the oldest end, closing connections past the idle timeout or lifetime
+	private void evictIdle() {
+		long now = System.nanoTime();
+		long idleTimeout = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+
+		for (PooledEntry entry : idle) {
+			boolean idleTooLong = config.getIdleTimeoutMillis() > 0 && now - entry.lastUsedNanos > idleTimeout
+					&& totalConnections.get() > config.getMinSize();
+
+			if ((idleTooLong || isExpired(entry, now)) && idle.removeLastOccurrence(entry)) {
+				closePhysical(entry);
+			}
+		}
+	}
+
+	private void fillToMinimum() {
+		while (!closed && totalConnections.get() < config.getMinSize()) {
+			try {
+				PooledEntry entry = createEntry();
+				idle.offerLast(entry);
+			} catch (SQLException e) {
+				// the database may be down, try again on the next pass
+				return;
+			}
+		}
+	}
+
+	private void detectLeaks() {
+		long threshold = config.getLeakDetectionThresholdMillis();
+
+		if (threshold <= 0) {
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		for (PooledEntry entry : borrowed) {
+			long heldMillis = TimeUnit.NANOSECONDS.toMillis(now - entry.borrowedNanos);
+
+			if (heldMillis > threshold && !entry.leakReported) {
+				entry.leakReported = true;
+				leaksDetected.increment();
+
+				System.err.println("Possible connection leak: connection held for " + heldMillis + "ms by "
+						+ entry.borrower.getName() + ", borrowed at:");
+				entry.borrowSite.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+
+		PooledEntry entry;
+
+		while ((entry = idle.pollFirst()) != null) {
+			closePhysical(entry);
+		}
+	}
+
+	public PoolConfig getConfig() {
+		return config;
+	}
+
+	public int getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	public int getActiveConnections() {
+		return borrowed.size();
+	}
+
+	// the number of callers currently blocked in getConnection
+	public int getWaitingCallers() {
+		return permits.getQueueLength();
+	}
+
+	public long getAcquireCount() {
+		return acquireCount.sum();
+	}
+
+	public long getAcquireWaitNanos() {
+		return acquireWaitNanos.sum();
+	}
+
+	public long getMaxAcquireWaitNanos() {
+		return maxAcquireWaitNanos.get();
+	}
+
+	// how long getConnection took, including any wait for a free connection and opening a new one
+	public LatencyHistogram getAcquireTime() {
+		return acquireTime;
+	}
+
+	public long getAcquireTimeouts() {
+		return acquireTimeouts.sum();
+	}
+
+	public long getConnectionsCreated() {
+		return connectionsCreated.sum();
+	}
+
+	public long getConnectionsClosed() {
+		return connectionsClosed.sum();
+	}
+
+	public long getValidationFailures() {
+		return validationFailures.sum();
+	}
+
+	public long getLeaksDetected() {
+		return leaksDetected.sum();
+	}
+
+	@Override
+	public String toString() {
+		long count = getAcquireCount();
+		double avgWaitMicros = count == 0 ? 0 : getAcquireWaitNanos() / 1_000.0 / count;
+
+		return String.format(
+				"ConnectionPool[total=%d, idle=%d, active=%d, waiting=%d, acquired=%d, avgWait=%.1fus, maxWait=%.1fus, timeouts=%d, leaks=%d]",
+				getTotalConnections(), getIdleConnections(), getActiveConnections(), getWaitingCallers(), count,
+				avgWaitMicros, getMaxAcquireWaitNanos() / 1_000.0, getAcquireTimeouts(), getLeaksDetected());
+	}
+
+	/*
+	 * A physical connection and its bookkeeping. The borrower never sees this object, only the proxy
+	 * returned by checkout().
+	 */
+	private class PooledEntry {
+		private final Connection physical;
+		private final StatementCache statementCache;
+		private final long createdNanos = System.nanoTime();
+		private volatile long lastUsedNanos = createdNanos;
+		private volatile long borrowedNanos;
+		private volatile Thread borrower;
+		private volatile Throwable borrowSite;
+		private volatile boolean leakReported;
+
+		private PooledEntry(Connection physical) {
+			this.physical = physical;
+
+			int cacheSize = config.getStatementCacheSize();
+			this.statementCache = cacheSize > 0 ? new StatementCache(physical, cacheSize) : null;
+		}
+
+		private Connection checkout() {
+			borrowedNanos = System.nanoTime();
+			borrower = Thread.currentThread();
+			borrowSite = config.getLeakDetectionThresholdMillis() > 0 ? new Throwable("Connection borrowed here") : null;
+			leakReported = false;
+			borrowed.add(this);
+
+			return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class<?>[] { Connection.class, StatementCache.Holder.class }, new PooledConnectionHandler(this));
+		}
+	}
+
+	/*
+	 * Routes every call on the borrowed connection to the physical connection, except close(), which
+	 * returns the connection to the pool. Each checkout gets its own handler so a caller that closes
+	 * twice, or keeps using a connection after closing it, cannot affect the next borrower.
+	 *
+	 * The lock keeps a close from returning the connection while another call is still using it. It
+	 * is held across the call to the driver, so it is a ReentrantLock: a virtual thread blocked on
+	 * a database round trip while holding a monitor would pin its carrier thread.
+	 */
+	private class PooledConnectionHandler implements InvocationHandler {
+		private final PooledEntry entry;
+		private final ReentrantLock lock = new ReentrantLock();
+		private boolean returned;
+
+		private PooledConnectionHandler(PooledEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			lock.lock();
+
+			try {
+				return invokeLocked(proxy, method, args);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private Object invokeLocked(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!returned) {
+					returned = true;
+					release(entry);
+				}
+				return null;
+
+			case "isClosed":
+				return returned || entry.physical.isClosed();
+
+			case "getStatementCache":
+				return returned ? null : entry.statementCache;
+
+			case "equals":
+				return proxy == args[0];
+
+			case "hashCode":
+				return System.identityHashCode(proxy);
+
+			case "toString":
+				return "Pooled" + entry.physical;
+
+			default:
+				if (returned) {
+					throw new SQLException("Connection has been returned to the pool");
+				}
+
+				try {
+					return method.invoke(entry.physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
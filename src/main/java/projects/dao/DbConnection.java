@@ -1,8 +1,9 @@
 package projects.dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import projects.exception.DbException;
 
@@ -14,23 +15,194 @@ public class DbConnection {
 	private static final int PORT = 3306;
 	private static final String SCHEMA = "projects";
 	private static final String USER = "projects";
-	
-	
-	
 
+	// allowMultiQueries lets ProjectDao send a whole project graph fetch as one batch
+	// rewriteBatchedStatements turns JDBC insert batches into multi-row INSERT statements
+	// useServerPrepStmts has MySQL parse each statement once, the pool's statement cache keeps them open for reuse
+	// useLocalSessionState answers getAutoCommit/isReadOnly from the driver instead of asking the server
+	// readOnlyPropagatesToServer=false keeps setReadOnly on the client, so a read-only read costs no extra
+	// round trip; InnoDB already runs reads that make no changes as read-only transactions
+	private static final String DEFAULT_URL = String.format(
+			"jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false&allowMultiQueries=true&rewriteBatchedStatements=true"
+					+ "&useServerPrepStmts=true&useLocalSessionState=true&readOnlyPropagatesToServer=false",
+			HOST, PORT, SCHEMA, USER, PASSWORD);
+
+	/*
+	 * Guards creating, replacing and closing the pool and router. Every acquire reads them, so once
+	 * they exist they are read through the volatile fields without taking the lock. It is a
+	 * ReentrantLock rather than synchronized so a virtual thread that has to wait for it does not pin
+	 * its carrier thread.
+	 */
+	private static final ReentrantLock lock = new ReentrantLock();
+
+	private static volatile String url = DEFAULT_URL;
+	private static volatile PoolConfig poolConfig = new PoolConfig();
+	private static volatile ConnectionPool pool;
+	private static volatile ReplicaConfig replicaConfig = new ReplicaConfig();
+	private static volatile ReplicaRouter replicaRouter;
+
+	/*
+	 * When any thread last committed a write, for read-your-writes routing. It is kept for the whole
+	 * process rather than per thread because the write and the read that must see it are often on
+	 * different threads, for example each async service call runs on its own virtual thread.
+	 */
+	private static volatile long lastWriteNanos;
+	private static volatile boolean written;
+
+	static {
+		DbMetrics.install();
+	}
+
+	// hands out a pooled connection to the primary, closing it (try-with-resources) returns it to the pool
 	public static Connection getConnection() {
-		String url = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false", HOST, PORT, SCHEMA, USER, PASSWORD);
-		
-	
-		
+		return getPool().getConnection();
+	}
+
+	// hands out a connection for read-only work, from a replica when replicas are configured
+	public static Connection getReadConnection() {
+		ReplicaRouter router = getReplicaRouter();
+
+		if (Objects.isNull(router)) {
+			return getConnection();
+		}
+
+		if (isInReadYourWritesWindow(router.getConfig())) {
+			return router.getPrimaryConnection();
+		}
+
+		return router.getReadConnection();
+	}
+
+	// called after a write commits so reads on every thread stay on the primary until replicas catch up
+	public static void recordWrite() {
+		lastWriteNanos = System.nanoTime();
+		written = true;
+	}
+
+	private static boolean isInReadYourWritesWindow(ReplicaConfig config) {
+		if (!written || config.getReadYourWritesMillis() <= 0) {
+			return false;
+		}
+
+		return System.nanoTime() - lastWriteNanos < TimeUnit.MILLISECONDS.toNanos(config.getReadYourWritesMillis());
+	}
+
+	// the pool is created on first use so that configurePool can be called before any DAO work
+	public static ConnectionPool getPool() {
+		ConnectionPool current = pool;
+
+		if (Objects.nonNull(current)) {
+			return current;
+		}
+
+		lock.lock();
+
 		try {
-			Connection conn = DriverManager.getConnection(url);
-			System.out.println("Connection to schema '" + SCHEMA + "' is successful. ");
-			return conn;
-		} catch (SQLException e) {
-			System.out.println("Unable to get a conection at " + url);
-			throw new DbException("Unable to get a conection at \" + url");
-				
+			if (Objects.isNull(pool)) {
+				pool = new ConnectionPool(url, poolConfig);
+				System.out.println("Connection pool created (" + poolConfig + ")");
+			}
+
+			return pool;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// null when no replicas are configured
+	public static ReplicaRouter getReplicaRouter() {
+		ReplicaRouter current = replicaRouter;
+
+		if (Objects.nonNull(current) || replicaConfig.getReplicaUrls().isEmpty()) {
+			return current;
+		}
+
+		lock.lock();
+
+		try {
+			if (Objects.isNull(replicaRouter) && !replicaConfig.getReplicaUrls().isEmpty()) {
+				replicaRouter = new ReplicaRouter(getPool(), url, replicaConfig, poolConfig);
+				System.out.println("Replica routing enabled (" + replicaConfig + ")");
+			}
+
+			return replicaRouter;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// the pool and router as they stand, without creating them, for metrics
+	static ConnectionPool currentPool() {
+		return pool;
+	}
+
+	static ReplicaRouter currentReplicaRouter() {
+		return replicaRouter;
+	}
+
+	// replaces the pool settings, any existing pool is closed and rebuilt on the next getConnection
+	public static void configurePool(PoolConfig config) {
+		if (Objects.isNull(config)) {
+			throw new DbException("Pool configuration must not be null");
+		}
+
+		lock.lock();
+
+		try {
+			poolConfig = config;
+			shutdown();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// points the pool at another database, for example an embedded one for benchmarks
+	public static void configureUrl(String jdbcUrl) {
+		if (Objects.isNull(jdbcUrl) || jdbcUrl.isBlank()) {
+			throw new DbException("JDBC URL must not be blank");
+		}
+
+		lock.lock();
+
+		try {
+			url = jdbcUrl;
+			shutdown();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// sets the replicas that reads are routed to, existing pools are closed and rebuilt on next use
+	public static void configureReplicas(ReplicaConfig config) {
+		if (Objects.isNull(config)) {
+			throw new DbException("Replica configuration must not be null");
+		}
+
+		lock.lock();
+
+		try {
+			replicaConfig = config;
+			shutdown();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public static void shutdown() {
+		lock.lock();
+
+		try {
+			if (Objects.nonNull(replicaRouter)) {
+				replicaRouter.close();
+				replicaRouter = null;
+			}
+
+			if (Objects.nonNull(pool)) {
+				pool.close();
+				pool = null;
+			}
+		} finally {
+			lock.unlock();
+		}
 	}
-}
 }
@@ -0,0 +1,149 @@
+package projects.dao;
+
+import java.util.Objects;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import projects.metrics.Metrics;
+import provided.util.DaoBase;
+import provided.util.SlowQueryLog;
+import provided.util.StatementCache;
+
+/**
+ * Publishes the database counters kept by {@link DaoBase}, {@link ConnectionPool},
+ * {@link StatementCache} and {@link ReplicaRouter} as the {@code projects:type=Database} MBean and
+ * as a section of the metrics report. Nothing is counted here; every attribute reads the live
+ * counters, and the pool is never created just to be measured.
+ */
+public class DbMetrics implements DbMetricsMBean {
+	private static final DbMetrics INSTANCE = new DbMetrics();
+	private static final int SLOW_STATEMENTS_REPORTED = 5;
+
+	private DbMetrics() {
+	}
+
+	// called once by DbConnection when it is first loaded
+	static void install() {
+		Metrics.register("type=Database", INSTANCE);
+		Metrics.addReportSection(INSTANCE::report);
+	}
+
+	@Override
+	public long getCommits() {
+		return DaoBase.getCommitCount();
+	}
+
+	@Override
+	public long getRollbacks() {
+		return DaoBase.getRollbackCount();
+	}
+
+	@Override
+	public long getRowsMapped() {
+		return DaoBase.getRowsMapped();
+	}
+
+	@Override
+	public int getConnectionsTotal() {
+		return (int)fromPool(ConnectionPool::getTotalConnections);
+	}
+
+	@Override
+	public int getConnectionsIdle() {
+		return (int)fromPool(ConnectionPool::getIdleConnections);
+	}
+
+	@Override
+	public int getConnectionsActive() {
+		return (int)fromPool(ConnectionPool::getActiveConnections);
+	}
+
+	@Override
+	public int getWaitingCallers() {
+		return (int)fromPool(ConnectionPool::getWaitingCallers);
+	}
+
+	@Override
+	public long getAcquireCount() {
+		return fromPool(ConnectionPool::getAcquireCount);
+	}
+
+	@Override
+	public long getAcquireTimeouts() {
+		return fromPool(ConnectionPool::getAcquireTimeouts);
+	}
+
+	@Override
+	public double getAcquireP50Micros() {
+		return acquireMicros(pool -> pool.getAcquireTime().getPercentileNanos(50));
+	}
+
+	@Override
+	public double getAcquireP99Micros() {
+		return acquireMicros(pool -> pool.getAcquireTime().getPercentileNanos(99));
+	}
+
+	@Override
+	public double getAcquireMaxMicros() {
+		return acquireMicros(pool -> pool.getAcquireTime().getMaxNanos());
+	}
+
+	@Override
+	public double getStatementCacheHitRate() {
+		return StatementCache.getTotalStats().hitRate();
+	}
+
+	@Override
+	public long getReplicaReads() {
+		ReplicaRouter router = DbConnection.currentReplicaRouter();
+		return Objects.isNull(router) ? 0 : router.getReplicaReads();
+	}
+
+	@Override
+	public long getReplicaFailovers() {
+		ReplicaRouter router = DbConnection.currentReplicaRouter();
+		return Objects.isNull(router) ? 0 : router.getFailovers();
+	}
+
+	// slow executions of all templates since the threshold was set, 0 when the slow statement log is off
+	@Override
+	public long getSlowStatements() {
+		SlowQueryLog log = DaoBase.getSlowQueryLog();
+		return Objects.isNull(log) ? 0 : log.getOffenders().stream().mapToLong(SlowQueryLog.Offender::getCount).sum();
+	}
+
+	private long fromPool(ToLongFunction<ConnectionPool> counter) {
+		ConnectionPool pool = DbConnection.currentPool();
+		return Objects.isNull(pool) ? 0 : counter.applyAsLong(pool);
+	}
+
+	private double acquireMicros(ToDoubleFunction<ConnectionPool> nanos) {
+		ConnectionPool pool = DbConnection.currentPool();
+		return Objects.isNull(pool) ? 0 : nanos.applyAsDouble(pool) / 1_000.0;
+	}
+
+	private String report() {
+		ConnectionPool pool = DbConnection.currentPool();
+		ReplicaRouter router = DbConnection.currentReplicaRouter();
+
+		return "database: commits=" + getCommits() + " rollbacks=" + getRollbacks() + " rowsMapped=" + getRowsMapped()
+				+ "\n  pool: " + (Objects.isNull(pool) ? "not started" : pool + " acquire " + pool.getAcquireTime())
+				+ "\n  statement cache: " + StatementCache.getTotalStats()
+				+ (Objects.isNull(router) ? "" : "\n  replicas: " + router) + slowStatementReport();
+	}
+
+	// the templates with the most slow time, the full list and their plans are on DaoBase.getSlowQueryLog()
+	private String slowStatementReport() {
+		SlowQueryLog log = DaoBase.getSlowQueryLog();
+
+		if (Objects.isNull(log)) {
+			return "";
+		}
+
+		StringBuilder report = new StringBuilder("\n  slow statements (>= ").append(log.getThresholdMillis()).append("ms):");
+		log.getOffenders().stream().limit(SLOW_STATEMENTS_REPORTED)
+				.forEach(offender -> report.append("\n    ").append(offender));
+
+		return report.toString();
+	}
+}
@@ -0,0 +1,39 @@
+package projects.dao;
+
+/**
+ * The JMX view of the database layer: transactions, mapped rows, the primary connection pool, the
+ * statement caches and replica routing. Times are in microseconds.
+ */
+public interface DbMetricsMBean {
+	long getCommits();
+
+	long getRollbacks();
+
+	long getRowsMapped();
+
+	int getConnectionsTotal();
+
+	int getConnectionsIdle();
+
+	int getConnectionsActive();
+
+	int getWaitingCallers();
+
+	long getAcquireCount();
+
+	long getAcquireTimeouts();
+
+	double getAcquireP50Micros();
+
+	double getAcquireP99Micros();
+
+	double getAcquireMaxMicros();
+
+	double getStatementCacheHitRate();
+
+	long getReplicaReads();
+
+	long getReplicaFailovers();
+
+	long getSlowStatements();
+}
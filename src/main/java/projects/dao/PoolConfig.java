@@ -0,0 +1,116 @@
+package projects.dao;
+
+/**
+ * Settings for the {@link ConnectionPool} that sits behind {@link DbConnection}. The defaults suit
+ * the single-user menu application as well as moderate concurrent load. Times are in
+ * milliseconds.
+ */
+public class PoolConfig {
+	private int minSize = 2;
+	private int maxSize = 10;
+	private long acquireTimeoutMillis = 5_000;
+	private long idleTimeoutMillis = 300_000;
+	private long maxLifetimeMillis = 1_800_000;
+	private long validateAfterIdleMillis = 5_000;
+	private int validationTimeoutSeconds = 2;
+	private long leakDetectionThresholdMillis = 0;
+	private long housekeepingIntervalMillis = 30_000;
+	private int statementCacheSize = 100;
+
+	// the fewest connections the pool keeps open, even when they are idle
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public void setMinSize(int minSize) {
+		this.minSize = minSize;
+	}
+
+	// the most connections the pool will ever have open (idle plus borrowed)
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	// how long getConnection waits for a free connection before throwing a DbException
+	public long getAcquireTimeoutMillis() {
+		return acquireTimeoutMillis;
+	}
+
+	public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+
+	// idle connections above minSize are closed after sitting unused this long
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	// connections older than this are retired when they are next returned or found idle
+	public long getMaxLifetimeMillis() {
+		return maxLifetimeMillis;
+	}
+
+	public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+		this.maxLifetimeMillis = maxLifetimeMillis;
+	}
+
+	// a connection idle for longer than this is checked with isValid() before it is handed out
+	public long getValidateAfterIdleMillis() {
+		return validateAfterIdleMillis;
+	}
+
+	public void setValidateAfterIdleMillis(long validateAfterIdleMillis) {
+		this.validateAfterIdleMillis = validateAfterIdleMillis;
+	}
+
+	public int getValidationTimeoutSeconds() {
+		return validationTimeoutSeconds;
+	}
+
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	// a borrowed connection held longer than this is reported as a leak, 0 turns leak detection off
+	public long getLeakDetectionThresholdMillis() {
+		return leakDetectionThresholdMillis;
+	}
+
+	public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+		this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+	}
+
+	// how often the background task evicts idle connections, tops up to minSize and checks for leaks
+	public long getHousekeepingIntervalMillis() {
+		return housekeepingIntervalMillis;
+	}
+
+	public void setHousekeepingIntervalMillis(long housekeepingIntervalMillis) {
+		this.housekeepingIntervalMillis = housekeepingIntervalMillis;
+	}
+
+	// prepared statements kept open per connection for reuse, 0 turns the statement cache off
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	@Override
+	public String toString() {
+		return "minSize=" + minSize + ", maxSize=" + maxSize + ", acquireTimeoutMillis=" + acquireTimeoutMillis
+				+ ", idleTimeoutMillis=" + idleTimeoutMillis + ", maxLifetimeMillis=" + maxLifetimeMillis
+				+ ", leakDetectionThresholdMillis=" + leakDetectionThresholdMillis
+				+ ", statementCacheSize=" + statementCacheSize;
+	}
+}
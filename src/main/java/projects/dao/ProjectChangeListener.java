@@ -0,0 +1,53 @@
+package projects.dao;
+
+import java.util.Collection;
+import java.util.List;
+
+import projects.entity.Project;
+import projects.entity.Step;
+
+/**
+ * Hears about every write made through a {@link ProjectDao}, so in-memory indexes can be kept up
+ * to date without going back to the database. Register one with
+ * {@link ProjectDao#addChangeListener(ProjectChangeListener)}.
+ *
+ * Each method is called on the writing thread after the transaction has committed and the
+ * connection has been returned to the pool, so a listener is free to read through the DAO. A bulk
+ * write that commits in chunks reports each chunk that committed, even when a later one fails.
+ * The projects passed in belong to the caller: copy what is needed, and never change or keep them.
+ * An exception thrown by a listener is reported and otherwise ignored, since the write has already
+ * happened.
+ *
+ * Writes made by other processes are not seen, so an index built on these events should offer a
+ * way to rebuild itself from the database.
+ */
+public interface ProjectChangeListener {
+  /**
+   * New projects were inserted, with their project IDs set. Any materials, steps and categories
+   * they hold were inserted with them.
+   */
+  default void projectsInserted(List<Project> projects) {
+  }
+
+  /**
+   * The detail fields of existing projects were written. Each project holds its ID, name,
+   * estimated and actual hours, difficulty and notes as they now are in the database; its
+   * materials, steps and categories did not change and may not be loaded.
+   */
+  default void projectDetailsChanged(List<Project> projects) {
+  }
+
+  /**
+   * Steps were added to existing projects, each with its step ID, project ID and step order set.
+   * Steps that were only moved are not reported, since moving changes nothing but the step order.
+   */
+  default void stepsAdded(List<Step> steps) {
+  }
+
+  /**
+   * The projects with these IDs were deleted, along with their materials, steps and categories.
+   * Some of the IDs may not have belonged to a project.
+   */
+  default void projectsDeleted(Collection<Integer> projectIds) {
+  }
+}
@@ -5,16 +5,42 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import projects.entity.Category;
+import projects.entity.DeleteProgress;
+import projects.entity.ImportCheckpoint;
 import projects.entity.Material;
+import projects.entity.Page;
 import projects.entity.Project;
+import projects.entity.Project.Detail;
+import projects.entity.ProjectKey;
+import projects.entity.ProjectSummary;
 import projects.entity.Step;
+import projects.entity.UpsertResult;
 import projects.exception.DbException;
+import projects.metrics.Metrics;
+import projects.metrics.OperationMetrics;
 import provided.util.DaoBase;
 
 // this class uses JDBC to perform CRUD on the project tables
@@ -26,108 +52,1445 @@ public class ProjectDao extends DaoBase {
 	private static final String PROJECT_TABLE = "project";
 	private static final String PROJECT_CATEGORY_TABLE = "project_category";
 	private static final String STEP_TABLE = "step";
+	private static final String IMPORT_CHECKPOINT_TABLE = "import_checkpoint";
+
+	// the most IDs bound into one IN clause, keeps statements well under the driver and server limits
+	private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
+	// new steps are numbered this far apart, so ten moves into the same gap fit before a renumber
+	public static final int STEP_ORDER_GAP = 1_024;
+
+	// latency and error counts for each public method, methods that only delegate are counted by their target
+	private static final OperationMetrics INSERT_PROJECT_METRICS = Metrics.operation("ProjectDao.insertProject");
+	private static final OperationMetrics INSERT_PROJECTS_METRICS = Metrics.operation("ProjectDao.insertProjects");
+	private static final OperationMetrics INSERT_PROJECT_GRAPHS_METRICS = Metrics.operation("ProjectDao.insertProjectGraphs");
+	private static final OperationMetrics IMPORT_PROJECT_GRAPHS_METRICS = Metrics.operation("ProjectDao.importProjectGraphs");
+	private static final OperationMetrics FETCH_IMPORT_CHECKPOINT_METRICS = Metrics.operation("ProjectDao.fetchImportCheckpoint");
+	private static final OperationMetrics DELETE_IMPORT_CHECKPOINT_METRICS = Metrics.operation("ProjectDao.deleteImportCheckpoint");
+	private static final OperationMetrics FETCH_ALL_PROJECTS_METRICS = Metrics.operation("ProjectDao.fetchAllProjects");
+	// for the stream, the time until the first row can be read
+	private static final OperationMetrics STREAM_ALL_PROJECTS_METRICS = Metrics.operation("ProjectDao.streamAllProjects");
+	private static final OperationMetrics FOR_EACH_PROJECT_CATEGORY_METRICS = Metrics.operation("ProjectDao.forEachProjectCategory");
+	private static final OperationMetrics FOR_EACH_MATERIAL_METRICS = Metrics.operation("ProjectDao.forEachMaterial");
+	private static final OperationMetrics FETCH_PROJECT_PAGE_METRICS = Metrics.operation("ProjectDao.fetchProjectPage");
+	private static final OperationMetrics FETCH_PROJECT_SUMMARY_PAGE_METRICS = Metrics.operation("ProjectDao.fetchProjectSummaryPage");
+	private static final OperationMetrics FETCH_PROJECT_BY_ID_METRICS = Metrics.operation("ProjectDao.fetchProjectById");
+	private static final OperationMetrics FETCH_PROJECTS_BY_IDS_METRICS = Metrics.operation("ProjectDao.fetchProjectsByIds");
+	private static final OperationMetrics UPSERT_PROJECTS_METRICS = Metrics.operation("ProjectDao.upsertProjects");
+	private static final OperationMetrics MODIFY_PROJECT_DETAILS_METRICS = Metrics.operation("ProjectDao.modifyProjectDetails");
+	private static final OperationMetrics DELETE_PROJECT_METRICS = Metrics.operation("ProjectDao.deleteProject");
+	private static final OperationMetrics DELETE_PROJECTS_METRICS = Metrics.operation("ProjectDao.deleteProjects");
+	private static final OperationMetrics ADD_STEPS_METRICS = Metrics.operation("ProjectDao.addSteps");
+	private static final OperationMetrics INSERT_STEP_METRICS = Metrics.operation("ProjectDao.insertStep");
+	private static final OperationMetrics MOVE_STEP_METRICS = Metrics.operation("ProjectDao.moveStep");
+
+	// @formatter:off
+	private static final String INSERT_PROJECT_SQL = ""
+			+ "INSERT INTO " + PROJECT_TABLE + " "
+			+ "(project_name, estimated_hours, actual_hours, difficulty, notes) "
+			+ "VALUES (?, ?, ?, ?, ?)";
+
+	// the row alias new holds the values the row would have been inserted with
+	private static final String UPSERT_PROJECT_SQL = INSERT_PROJECT_SQL + " AS new "
+			+ "ON DUPLICATE KEY UPDATE "
+			+ "estimated_hours = new.estimated_hours, "
+			+ "actual_hours = new.actual_hours, "
+			+ "difficulty = new.difficulty, "
+			+ "notes = new.notes";
+
+	private static final String INSERT_MATERIAL_SQL = ""
+			+ "INSERT INTO " + MATERIAL_TABLE + " "
+			+ "(project_id, material_name, num_required, cost) "
+			+ "VALUES (?, ?, ?, ?)";
+
+	private static final String INSERT_STEP_SQL = ""
+			+ "INSERT INTO " + STEP_TABLE + " "
+			+ "(project_id, step_text, step_order) "
+			+ "VALUES (?, ?, ?)";
+
+	private static final String INSERT_PROJECT_CATEGORY_SQL = ""
+			+ "INSERT INTO " + PROJECT_CATEGORY_TABLE + " "
+			+ "(project_id, category_id) "
+			+ "VALUES (?, ?)";
+
+	private static final String SAVE_IMPORT_CHECKPOINT_SQL = ""
+			+ "INSERT INTO " + IMPORT_CHECKPOINT_TABLE + " "
+			+ "(source, byte_offset, line_number, projects_imported) "
+			+ "VALUES (?, ?, ?, ?) AS new "
+			+ "ON DUPLICATE KEY UPDATE "
+			+ "byte_offset = new.byte_offset, "
+			+ "line_number = new.line_number, "
+			+ "projects_imported = new.projects_imported";
+
+	private static final String FETCH_IMPORT_CHECKPOINT_SQL = ""
+			+ "SELECT byte_offset, line_number, projects_imported FROM " + IMPORT_CHECKPOINT_TABLE + " WHERE source = ?";
+
+	private static final String DELETE_IMPORT_CHECKPOINT_SQL = ""
+			+ "DELETE FROM " + IMPORT_CHECKPOINT_TABLE + " WHERE source = ?";
+
+	private static final String FETCH_ALL_PROJECTS_SQL = ""
+			+ "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_name";
+
+	private static final String STREAM_ALL_PROJECTS_SQL = ""
+			+ "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_name, project_id";
+
+	// every project once per category it's in, and once with a null category if it's in none
+	private static final String FETCH_PROJECT_CATEGORIES_SQL = ""
+			+ "SELECT p.project_id, pc.category_id FROM " + PROJECT_TABLE + " p "
+			+ "LEFT JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (project_id)";
+
+	private static final String FETCH_ALL_MATERIALS_SQL = ""
+			+ "SELECT * FROM " + MATERIAL_TABLE;
+
+	// the keyset page queries, each starts with the SELECT list that suits its caller
+	private static final String FIRST_PAGE_SQL = ""
+			+ "FROM " + PROJECT_TABLE + " "
+			+ "ORDER BY project_name, project_id "
+			+ "LIMIT ?";
+
+	private static final String NEXT_PAGE_SQL = ""
+			+ "FROM " + PROJECT_TABLE + " "
+			+ "WHERE project_name > ? OR (project_name = ? AND project_id > ?) "
+			+ "ORDER BY project_name, project_id "
+			+ "LIMIT ?";
+
+	private static final String FIRST_PROJECT_PAGE_SQL = "SELECT * " + FIRST_PAGE_SQL;
+	private static final String NEXT_PROJECT_PAGE_SQL = "SELECT * " + NEXT_PAGE_SQL;
+
+	// the ID and name are both in the project_name index, so the plain summary is read from the index alone
+	private static final String SUMMARY_COLUMNS = "SELECT project_id, project_name ";
+	private static final String SUMMARY_DETAIL_COLUMNS = "SELECT project_id, project_name, difficulty, estimated_hours, actual_hours ";
+
+	private static final String FIRST_SUMMARY_PAGE_SQL = SUMMARY_COLUMNS + FIRST_PAGE_SQL;
+	private static final String NEXT_SUMMARY_PAGE_SQL = SUMMARY_COLUMNS + NEXT_PAGE_SQL;
+	private static final String FIRST_SUMMARY_DETAIL_PAGE_SQL = SUMMARY_DETAIL_COLUMNS + FIRST_PAGE_SQL;
+	private static final String NEXT_SUMMARY_DETAIL_PAGE_SQL = SUMMARY_DETAIL_COLUMNS + NEXT_PAGE_SQL;
+
+	private static final String FETCH_PROJECT_SQL = ""
+			+ "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+
+	private static final String FETCH_MATERIALS_SQL = ""
+			+ "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ?";
+
+	// step_id breaks ties between steps numbered the same before step orders were allocated with gaps
+	private static final String FETCH_STEPS_SQL = ""
+			+ "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ? ORDER BY step_order, step_id";
+
+	private static final String FETCH_CATEGORIES_SQL = ""
+			+ "SELECT c.* FROM " + CATEGORY_TABLE + " c "
+			+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+			+ "WHERE project_id = ?";
+
+	private static final String FETCH_PROJECT_GRAPH_SQL = ""
+			+ "START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY; "
+			+ FETCH_PROJECT_SQL + "; "
+			+ FETCH_MATERIALS_SQL + "; "
+			+ FETCH_STEPS_SQL + "; "
+			+ FETCH_CATEGORIES_SQL + "; "
+			+ "COMMIT";
+
+	// modifyProjectDetails adds "column = ?" for each detail it writes, then MODIFY_PROJECT_WHERE_SQL
+	private static final String MODIFY_PROJECT_SQL = "UPDATE " + PROJECT_TABLE + " SET ";
+	private static final String MODIFY_PROJECT_WHERE_SQL = " WHERE project_id = ?";
+
+	private static final String DELETE_PROJECT_SQL = ""
+			+ "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+
+	/*
+	 * Locks the project row so that step orders are handed out one writer at a time, and reads the
+	 * highest step order in the same round trip. The subquery is answered from the
+	 * project_step_order index.
+	 */
+	private static final String LOCK_PROJECT_STEPS_SQL = ""
+			+ "SELECT p.project_id, "
+			+ "(SELECT MAX(s.step_order) FROM " + STEP_TABLE + " s WHERE s.project_id = p.project_id) "
+			+ "FROM " + PROJECT_TABLE + " p WHERE p.project_id = ? FOR UPDATE";
+
+	private static final String FETCH_STEP_ORDER_SQL = ""
+			+ "SELECT step_order FROM " + STEP_TABLE + " WHERE step_id = ? AND project_id = ?";
+
+	// the lowest step order at or after the given one, leaving out the step it follows and the step being moved
+	private static final String FETCH_NEXT_STEP_ORDER_SQL = ""
+			+ "SELECT MIN(step_order) FROM " + STEP_TABLE + " "
+			+ "WHERE project_id = ? AND step_order >= ? AND step_id <> ? AND step_id <> ?";
+
+	private static final String FETCH_FIRST_STEP_ORDER_SQL = ""
+			+ "SELECT MIN(step_order) FROM " + STEP_TABLE + " WHERE project_id = ? AND step_id <> ?";
+
+	private static final String FETCH_STEP_IDS_SQL = ""
+			+ "SELECT step_id FROM " + STEP_TABLE + " WHERE project_id = ? ORDER BY step_order, step_id";
+
+	private static final String MODIFY_STEP_ORDER_SQL = ""
+			+ "UPDATE " + STEP_TABLE + " SET step_order = ? WHERE step_id = ?";
+
+	private static final String MOVE_STEP_SQL = ""
+			+ "UPDATE " + STEP_TABLE + " SET step_order = ? WHERE step_id = ? AND project_id = ?";
+
+	// the child tables deleteProjects empties before the project rows, so the cascade has nothing left to do
+	private static final List<String> CHILD_TABLES = List.of(PROJECT_CATEGORY_TABLE, MATERIAL_TABLE, STEP_TABLE);
+	// @formatter:on
+
+	// shared by every ProjectDao, since they all write to the same database
+	private static final List<ProjectChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+	public static void addChangeListener(ProjectChangeListener listener) {
+		changeListeners.add(Objects.requireNonNull(listener));
+	}
+
+	public static void removeChangeListener(ProjectChangeListener listener) {
+		changeListeners.remove(listener);
+	}
+
+	// called once the connection is closed, so a listener that reads through the DAO can't starve the pool
+	private static void fireChange(Consumer<ProjectChangeListener> event) {
+		for (ProjectChangeListener listener : changeListeners) {
+			try {
+				event.accept(listener);
+			} catch (RuntimeException e) {
+				// the write has committed, a broken listener must not make it look as if it failed
+				System.err.println("Project change listener " + listener + " failed: " + e);
+			}
+		}
+	}
+
+	private static void fireProjectsInserted(List<Project> projects) {
+		if (!projects.isEmpty()) {
+			fireChange(listener -> listener.projectsInserted(projects));
+		}
+	}
+
+	private static void fireProjectDetailsChanged(List<Project> projects) {
+		if (!projects.isEmpty()) {
+			fireChange(listener -> listener.projectDetailsChanged(projects));
+		}
+	}
+
+	private static void fireStepsAdded(List<Step> steps) {
+		if (!steps.isEmpty()) {
+			fireChange(listener -> listener.stepsAdded(steps));
+		}
+	}
+
+	private static void fireProjectsDeleted(Collection<Integer> projectIds) {
+		if (!projectIds.isEmpty()) {
+			fireChange(listener -> listener.projectsDeleted(projectIds));
+		}
+	}
+
+	// every write commits through here, so reads can be kept on the primary until replicas have it
+	@Override
+	protected void commitTransaction(Connection conn) throws SQLException {
+		super.commitTransaction(conn);
+		DbConnection.recordWrite();
+	}
 
 	// insert a project row into the project table
 	// throw DbException if theres an error inserting the row
+	// the new project ID comes back with the INSERT itself through getGeneratedKeys, no second query needed
 
 	public Project insertProject(Project project) {
-		String sql = "" + "INSERT INTO " + PROJECT_TABLE + " "
-				+ "(project_name, estimated_hours, actual_hours, difficulty, notes) " + "VALUES " + "(?, ?, ?, ?, ?)";
+		return INSERT_PROJECT_METRICS.time(() -> {
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try (PreparedStatement stmt = prepareStatement(conn, INSERT_PROJECT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+					setProjectParameters(stmt, project);
+
+					stmt.executeUpdate();
+
+					Integer projectId = readGeneratedKeys(stmt, List.of(project)).get(0);
+					commitTransaction(conn);
+
+					project.setProjectId(projectId);
+					project.markClean();
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+			fireProjectsInserted(List.of(project));
+			return project;
+
+		});
+	}
+
+	// how many rows insertProjects sends per executeBatch call
+	private int insertBatchSize = 500;
+
+	public int getInsertBatchSize() {
+		return insertBatchSize;
+	}
+
+	public void setInsertBatchSize(int insertBatchSize) {
+		if (insertBatchSize < 1) {
+			throw new DbException("Insert batch size must be at least 1: " + insertBatchSize);
+		}
+
+		this.insertBatchSize = insertBatchSize;
+	}
+
+	/**
+	 * This method inserts many project rows with JDBC batching. The rows are sent
+	 * in batches of {@link #getInsertBatchSize()}. Because the connection URL sets
+	 * rewriteBatchedStatements=true, the driver sends each batch as a single
+	 * multi-row INSERT, and the generated project IDs for the whole batch are read
+	 * back from getGeneratedKeys() in one go. All the batches run in one
+	 * transaction, so either every project is inserted or none are.
+	 *
+	 * @param projects The projects to insert. Each one has its project ID set on
+	 *                 success. Materials, steps and categories are not inserted.
+	 * @return The same list of projects.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public List<Project> insertProjects(List<Project> projects) {
+		return INSERT_PROJECTS_METRICS.time(() -> {
+			if (projects.isEmpty()) {
+				return projects;
+			}
+
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try {
+					batchInsert(conn, INSERT_PROJECT_SQL, projects, this::setProjectParameters, Project::setProjectId);
+
+					commitTransaction(conn);
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+			fireProjectsInserted(projects);
+			return projects;
+
+		});
+	}
+
+	// inserts one project together with its materials, steps and categories, see insertProjectGraphs
+	public Project insertProjectGraph(Project project) {
+		insertProjectGraphs(List.of(project));
+		return project;
+	}
+
+	/**
+	 * This method inserts projects together with their materials, steps and
+	 * categories, all on one connection in a single transaction. The project rows
+	 * are batch inserted first so their generated IDs can be copied into the child
+	 * rows. Then all the materials, all the steps and all the project_category rows
+	 * are each sent as one JDBC batch (rewritten by the driver into multi-row
+	 * INSERTs), no matter how many projects are in the list.
+	 *
+	 * Steps without a step order are numbered by their position in the project's
+	 * step list, {@link #STEP_ORDER_GAP} apart so steps can later be inserted
+	 * between them. The projects are new, so there are no existing steps to look
+	 * up. Categories must already
+	 * exist; only the link rows in project_category are written.
+	 *
+	 * @param projects The projects to insert. On success every project, material
+	 *                 and step has its generated ID and project ID set.
+	 * @return The same list of projects.
+	 * @throws DbException Thrown if a category has no ID or if an exception is
+	 *                     thrown by the driver. Nothing is written in that case,
+	 *                     and the IDs, project IDs and step orders of the projects
+	 *                     are put back to what they were, so the same objects can
+	 *                     be inserted again.
+	 */
+	public List<Project> insertProjectGraphs(List<Project> projects) {
+		return INSERT_PROJECT_GRAPHS_METRICS.time(() -> {
+			if (projects.isEmpty()) {
+				return projects;
+			}
+
+			GraphKeys keys = new GraphKeys(projects);
+
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try {
+					insertProjectGraphs(conn, projects);
+
+					commitTransaction(conn);
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					keys.restore();
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+			fireProjectsInserted(projects);
+			return projects;
+
+		});
+	}
+
+	/**
+	 * This method inserts project graphs like
+	 * {@link #insertProjectGraphs(List)} and saves an import checkpoint in the
+	 * same transaction. Either both are written or neither is, so an import that
+	 * resumes from its last checkpoint never writes a project twice or skips one.
+	 *
+	 * @param projects   The projects to insert, which may be empty when only the
+	 *                   checkpoint needs to move.
+	 * @param checkpoint Where the import will resume once these projects are in.
+	 * @return The same list of projects.
+	 * @throws DbException Thrown if a category has no ID or if an exception is
+	 *                     thrown by the driver. Nothing is written in that case,
+	 *                     and the projects are put back as
+	 *                     {@link #insertProjectGraphs(List)} puts them back.
+	 */
+	public List<Project> importProjectGraphs(List<Project> projects, ImportCheckpoint checkpoint) {
+		return IMPORT_PROJECT_GRAPHS_METRICS.time(() -> {
+			GraphKeys keys = new GraphKeys(projects);
+
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try {
+					insertProjectGraphs(conn, projects);
+
+					try (PreparedStatement stmt = prepareStatement(conn, SAVE_IMPORT_CHECKPOINT_SQL)) {
+						setParameter(stmt, 1, checkpoint.source(), String.class);
+						setParameter(stmt, 2, checkpoint.byteOffset(), Long.class);
+						setParameter(stmt, 3, checkpoint.lineNumber(), Long.class);
+						setParameter(stmt, 4, checkpoint.projectsImported(), Long.class);
+
+						stmt.executeUpdate();
+					}
+
+					commitTransaction(conn);
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					keys.restore();
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+			fireProjectsInserted(projects);
+			return projects;
+		});
+	}
+
+	// the checkpoint left by an import of the source that has not finished, if there is one
+	public Optional<ImportCheckpoint> fetchImportCheckpoint(String source) {
+		return FETCH_IMPORT_CHECKPOINT_METRICS.time(() -> {
+			try (Connection conn = DbConnection.getConnection();
+					PreparedStatement stmt = prepareStatement(conn, FETCH_IMPORT_CHECKPOINT_SQL)) {
+				setParameter(stmt, 1, source, String.class);
+
+				try (ResultSet rs = stmt.executeQuery()) {
+					if (!rs.next()) {
+						return Optional.empty();
+					}
+
+					return Optional.of(new ImportCheckpoint(source, rs.getLong(1), rs.getLong(2), rs.getLong(3)));
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+		});
+	}
+
+	// forgets an import's checkpoint, so the next import of the source starts from the beginning
+	public boolean deleteImportCheckpoint(String source) {
+		return DELETE_IMPORT_CHECKPOINT_METRICS.time(() -> {
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try (PreparedStatement stmt = prepareStatement(conn, DELETE_IMPORT_CHECKPOINT_SQL)) {
+					setParameter(stmt, 1, source, String.class);
+
+					boolean deleted = stmt.executeUpdate() == 1;
+					commitTransaction(conn);
+					return deleted;
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+		});
+	}
+
+	// writes the graphs on the caller's connection and transaction
+	private void insertProjectGraphs(Connection conn, List<Project> projects) throws SQLException {
+		batchInsert(conn, INSERT_PROJECT_SQL, projects, this::setProjectParameters, Project::setProjectId);
+
+		List<Material> materials = new ArrayList<>();
+		List<Step> steps = new ArrayList<>();
+		List<Integer[]> projectCategories = new ArrayList<>();
+
+		for (Project project : projects) {
+			Integer projectId = project.getProjectId();
+
+			for (Material material : project.getMaterials()) {
+				material.setProjectId(projectId);
+				materials.add(material);
+			}
+
+			int position = 1;
+
+			for (Step step : project.getSteps()) {
+				step.setProjectId(projectId);
+
+				if (Objects.isNull(step.getStepOrder())) {
+					step.setStepOrder(position * STEP_ORDER_GAP);
+				}
+
+				position++;
+				steps.add(step);
+			}
+
+			for (Category category : project.getCategories()) {
+				if (Objects.isNull(category.getCategoryId())) {
+					throw new DbException("Category '" + category.getCategoryName() + "' for project '"
+							+ project.getProjectName() + "' has no category ID");
+				}
+
+				projectCategories.add(new Integer[] { projectId, category.getCategoryId() });
+			}
+		}
+
+		batchInsert(conn, INSERT_MATERIAL_SQL, materials, this::setMaterialParameters, Material::setMaterialId);
+		batchInsert(conn, INSERT_STEP_SQL, steps, this::setStepParameters, Step::setStepId);
+		batchInsert(conn, INSERT_PROJECT_CATEGORY_SQL, projectCategories, (stmt, link) -> {
+			setParameter(stmt, 1, link[0], Integer.class);
+			setParameter(stmt, 2, link[1], Integer.class);
+		}, null);
+	}
+
+	/*
+	 * Sends the rows as JDBC batches of insertBatchSize. If an ID setter is given,
+	 * the generated key of each row is copied back into it.
+	 */
+	private <T> void batchInsert(Connection conn, String sql, List<T> rows, ParameterBinder<T> binder,
+			BiConsumer<T, Integer> idSetter) throws SQLException {
+		if (rows.isEmpty()) {
+			return;
+		}
+
+		int keys = Objects.isNull(idSetter) ? Statement.NO_GENERATED_KEYS : Statement.RETURN_GENERATED_KEYS;
+
+		try (PreparedStatement stmt = prepareStatement(conn, sql, keys)) {
+			for (List<T> batch : chunk(rows, insertBatchSize)) {
+				for (T row : batch) {
+					binder.bind(stmt, row);
+					stmt.addBatch();
+				}
+
+				stmt.executeBatch();
+
+				if (Objects.nonNull(idSetter)) {
+					List<Integer> ids = readGeneratedKeys(stmt, batch);
+
+					for (int index = 0; index < batch.size(); index++) {
+						idSetter.accept(batch.get(index), ids.get(index));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method inserts or updates project rows matched on their unique project
+	 * name, compared exactly, for syncing from another system. The projects are handled in chunks of
+	 * {@link #getInsertBatchSize()}, each in its own transaction, and each chunk
+	 * costs at most three round trips:
+	 *
+	 * <ol>
+	 * <li>One SELECT with an IN clause reads the rows that already have those
+	 * names, so each project can be classed as inserted, updated or unchanged.</li>
+	 * <li>One JDBC batch of INSERT ... ON DUPLICATE KEY UPDATE writes the inserted
+	 * and updated projects. Unchanged projects are not sent at all.</li>
+	 * <li>If any project was new, one more SELECT reads back the IDs it was given.
+	 * Generated keys can't be used here, since the driver can't tell which rows of
+	 * a rewritten upsert batch were inserted.</li>
+	 * </ol>
+	 *
+	 * The write is an upsert rather than a plain INSERT or UPDATE so that a row
+	 * added or deleted by someone else between the read and the write is still
+	 * handled correctly; only the counts can be off in that case. Running the same
+	 * sync twice is safe, the second run reports every project as unchanged. As
+	 * each chunk commits on its own, a failed sync keeps the chunks before the
+	 * failure and can simply be run again.
+	 *
+	 * @param projects The projects to write. Each one has its project ID set on
+	 *                 success. Materials, steps and categories are not written.
+	 * @return How many projects were inserted, updated and unchanged.
+	 * @throws DbException Thrown if a project has no name, if a name appears more
+	 *                     than once, or if an exception is thrown by the driver.
+	 */
+	public UpsertResult upsertProjects(List<Project> projects) {
+		return UPSERT_PROJECTS_METRICS.time(() -> {
+			Set<String> names = new HashSet<>();
+
+			for (Project project : projects) {
+				if (Objects.isNull(project.getProjectName())) {
+					throw new DbException("Every project in an upsert needs a project name");
+				}
+
+				if (!names.add(project.getProjectName())) {
+					throw new DbException("Project name '" + project.getProjectName() + "' appears more than once");
+				}
+			}
+
+			List<Project> inserted = new ArrayList<>();
+			List<Project> updated = new ArrayList<>();
+			int unchanged = 0;
+
+			try (Connection conn = DbConnection.getConnection()) {
+				for (List<Project> chunk : chunk(projects, insertBatchSize)) {
+					List<Project> chunkInserted = new ArrayList<>();
+					List<Project> chunkUpdated = new ArrayList<>();
+					startTransaction(conn);
+
+					try {
+						int chunkUnchanged = upsertChunk(conn, chunk, chunkInserted, chunkUpdated);
+						commitTransaction(conn);
+
+						inserted.addAll(chunkInserted);
+						updated.addAll(chunkUpdated);
+						unchanged += chunkUnchanged;
+					} catch (Exception e) {
+						rollbackTransaction(conn);
+						throw new DbException(e);
+					}
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			} finally {
+				// the chunks that committed before any failure
+				fireProjectsInserted(inserted);
+				fireProjectDetailsChanged(updated);
+			}
+
+			return new UpsertResult(inserted.size(), updated.size(), unchanged);
+		});
+	}
+
+	// fills in the inserted and updated projects and returns how many were unchanged
+	private int upsertChunk(Connection conn, List<Project> chunk, List<Project> inserts, List<Project> updates)
+			throws SQLException {
+		Map<String, Project> existing = fetchProjectsByName(conn, chunk);
+		List<Project> writes = new ArrayList<>();
+		int unchanged = 0;
+
+		for (Project project : chunk) {
+			Project current = existing.get(project.getProjectName());
+
+			if (Objects.isNull(current)) {
+				inserts.add(project);
+				writes.add(project);
+				continue;
+			}
+
+			project.setProjectId(current.getProjectId());
+
+			// the loaded row tracks changes, so setting the new values shows whether anything differs
+			current.setEstimatedHours(project.getEstimatedHours());
+			current.setActualHours(project.getActualHours());
+			current.setDifficulty(project.getDifficulty());
+			current.setNotes(project.getNotes());
+
+			if (current.isModified()) {
+				writes.add(project);
+				updates.add(project);
+			} else {
+				project.markClean();
+				unchanged++;
+			}
+		}
+
+		if (writes.isEmpty()) {
+			return unchanged;
+		}
+
+		try (PreparedStatement stmt = prepareStatement(conn, UPSERT_PROJECT_SQL)) {
+			for (Project project : writes) {
+				setProjectParameters(stmt, project);
+				stmt.addBatch();
+			}
+
+			stmt.executeBatch();
+		}
+
+		if (!inserts.isEmpty()) {
+			Map<String, Project> inserted = fetchProjectsByName(conn, inserts);
+
+			for (Project project : inserts) {
+				Project row = inserted.get(project.getProjectName());
+
+				if (Objects.isNull(row)) {
+					throw new SQLException("Project '" + project.getProjectName() + "' was not found after the upsert");
+				}
+
+				project.setProjectId(row.getProjectId());
+			}
+		}
+
+		writes.forEach(Project::markClean);
+		return unchanged;
+	}
+
+	/*
+	 * The rows with the same names as the projects, by name. project_name has the binary
+	 * utf8mb4_0900_bin collation, so the unique index and the IN clause compare names exactly as
+	 * String.equals does and a row read back always matches its project here. Under a case or accent
+	 * insensitive collation a project could match a row whose name is spelled differently, and
+	 * would then be missed in this map.
+	 */
+	private Map<String, Project> fetchProjectsByName(Connection conn, List<Project> projects) throws SQLException {
+		Map<String, Project> projectsByName = new HashMap<>();
+
+		try (PreparedStatement stmt = prepareStatement(conn, "SELECT * FROM " + PROJECT_TABLE
+				+ " WHERE project_name IN (" + inClausePlaceholders(inClauseSize(projects.size())) + ")")) {
+			setInClauseParameters(stmt, 1, projects.stream().map(Project::getProjectName).toList(), String.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Project project = extractProject(rs);
+					projectsByName.put(project.getProjectName(), project);
+				}
+			}
+		}
+
+		return projectsByName;
+	}
+
+	// sets the parameters of an INSERT for one row
+	@FunctionalInterface
+	private interface ParameterBinder<T> {
+		void bind(PreparedStatement stmt, T row) throws SQLException;
+	}
+
+	private void setMaterialParameters(PreparedStatement stmt, Material material) throws SQLException {
+		setParameter(stmt, 1, material.getProjectId(), Integer.class);
+		setParameter(stmt, 2, material.getMaterialName(), String.class);
+		setParameter(stmt, 3, material.getNumRequired(), Integer.class);
+		setParameter(stmt, 4, material.getCost(), BigDecimal.class);
+	}
+
+	private void setStepParameters(PreparedStatement stmt, Step step) throws SQLException {
+		setParameter(stmt, 1, step.getProjectId(), Integer.class);
+		setParameter(stmt, 2, step.getStepText(), String.class);
+		setParameter(stmt, 3, step.getStepOrder(), Integer.class);
+	}
+
+	private void setProjectParameters(PreparedStatement stmt, Project project) throws SQLException {
+		setParameter(stmt, 1, project.getProjectName(), String.class);
+		setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
+		setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
+		setParameter(stmt, 4, project.getDifficulty(), Integer.class);
+		setParameter(stmt, 5, project.getNotes(), String.class);
+	}
+
+	// reads one generated key per inserted row, in the order the rows were added
+	private List<Integer> readGeneratedKeys(Statement stmt, List<?> rows) throws SQLException {
+		List<Integer> keys = new ArrayList<>(rows.size());
+
+		try (ResultSet rs = stmt.getGeneratedKeys()) {
+			while (rs.next()) {
+				keys.add(rs.getInt(1));
+			}
+		}
+
+		if (keys.size() != rows.size()) {
+			throw new SQLException("Expected " + rows.size() + " generated keys but received " + keys.size());
+		}
+
+		return keys;
+	}
+
+	public List<Project> fetchAllProjects() {
+		return FETCH_ALL_PROJECTS_METRICS.time(() -> {
+			try (Connection conn = DbConnection.getReadConnection()) {
+				// a single SELECT needs no transaction of its own
+				startReadOnly(conn);
+
+				try (PreparedStatement stmt = prepareStatement(conn, FETCH_ALL_PROJECTS_SQL)) {
+					try (ResultSet rs = stmt.executeQuery()) {
+						List<Project> projects = new LinkedList<>();
+
+						while (rs.next()) {
+							projects.add(extractProject(rs));
+
+						}
+
+						return projects;
+
+					}
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+		});
+	}
+
+	/**
+	 * This method returns all project rows as a lazily consumed stream. The rows
+	 * are not read into memory up front: the driver is put into row streaming mode
+	 * (forward-only, read-only, fetch size Integer.MIN_VALUE), so each project is
+	 * read from the socket and mapped only when the stream asks for it.
+	 *
+	 * The stream holds a pooled connection until it is closed, so callers must
+	 * close it, normally with try-with-resources. The resources are also released
+	 * as soon as the last row has been consumed. While the stream is open, the
+	 * connection cannot be used for any other statement.
+	 *
+	 * @return A stream of projects ordered by name and ID.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public Stream<Project> streamAllProjects() {
+		return STREAM_ALL_PROJECTS_METRICS.time(() -> {
+			Connection conn = DbConnection.getReadConnection();
+			PreparedStatement stmt = null;
+
+			try {
+				startReadOnly(conn);
+
+				stmt = prepareStreamingStatement(conn, STREAM_ALL_PROJECTS_SQL);
+				streamRows(stmt);
+				ResultSet rs = stmt.executeQuery();
+
+				ResultSetSpliterator<Project> rows = new ResultSetSpliterator<>(conn, stmt, rs,
+						this::extractProject);
+
+				return StreamSupport.stream(rows, false).onClose(rows::close);
+			} catch (SQLException e) {
+				if (Objects.nonNull(stmt)) {
+					closeQuietly(stmt);
+				}
+
+				closeQuietly(conn);
+				throw new DbException(e);
+			}
+
+		});
+	}
+
+	/**
+	 * This method reads which categories every project is in, for building
+	 * in-memory category indexes. It is one query over the project_id columns,
+	 * streamed from the server like {@link #streamAllProjects()}, so no rows are
+	 * held in memory here whatever the size of the tables.
+	 *
+	 * @param action Called with each project ID and category ID. A project in no
+	 *               category is passed once with a null category ID. Called on the
+	 *               calling thread while the connection is still open, so it must
+	 *               not use the DAO.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public void forEachProjectCategory(BiConsumer<Integer, Integer> action) {
+		FOR_EACH_PROJECT_CATEGORY_METRICS.run(() -> {
+			try (Connection conn = DbConnection.getReadConnection()) {
+				startReadOnly(conn);
+
+				try (PreparedStatement stmt = prepareStreamingStatement(conn, FETCH_PROJECT_CATEGORIES_SQL)) {
+					streamRows(stmt);
+
+					try (ResultSet rs = stmt.executeQuery()) {
+						while (rs.next()) {
+							action.accept(rs.getInt(1), rs.getObject(2, Integer.class));
+						}
+					}
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+		});
+	}
+
+	/**
+	 * This method reads every material row, in no particular order, streamed from
+	 * the server like {@link #streamAllProjects()}, for building in-memory
+	 * aggregates without loading every project graph.
+	 *
+	 * @param action Called with each material. Called on the calling thread while
+	 *               the connection is still open, so it must not use the DAO.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public void forEachMaterial(Consumer<Material> action) {
+		FOR_EACH_MATERIAL_METRICS.run(() -> {
+			try (Connection conn = DbConnection.getReadConnection()) {
+				startReadOnly(conn);
+
+				try (PreparedStatement stmt = prepareStreamingStatement(conn, FETCH_ALL_MATERIALS_SQL)) {
+					streamRows(stmt);
+
+					try (ResultSet rs = stmt.executeQuery()) {
+						while (rs.next()) {
+							action.accept(extract(rs, Material.class));
+						}
+					}
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+		});
+	}
+
+	/**
+	 * This method returns one page of projects in name order using keyset
+	 * pagination. Instead of an OFFSET, which makes MySQL read and throw away every
+	 * row before the page, the query seeks directly to the first row after the
+	 * given key using the unique project_name index, which InnoDB extends with the
+	 * primary key so it covers (project_name, project_id). Every page costs the
+	 * same no matter how deep into the listing it is.
+	 *
+	 * @param after    The key of the last project on the previous page, or null
+	 *                 for the first page.
+	 * @param pageSize The maximum number of projects on the page.
+	 * @return The page. Its next key is null when there are no more projects.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public Page<Project> fetchProjectPage(ProjectKey after, int pageSize) {
+		return FETCH_PROJECT_PAGE_METRICS.time(() -> {
+			if (pageSize < 1) {
+				throw new DbException("Page size must be at least 1: " + pageSize);
+			}
+
+			String sql = Objects.isNull(after) ? FIRST_PROJECT_PAGE_SQL : NEXT_PROJECT_PAGE_SQL;
+
+			try (Connection conn = DbConnection.getReadConnection()) {
+				startReadOnly(conn);
+
+				try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+					return readPage(stmt, after, pageSize, this::extractProject, ProjectKey::of);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+		});
+	}
+
+	/**
+	 * This method returns one page of project summaries in name order, with the
+	 * same keyset pagination as {@link #fetchProjectPage(ProjectKey, int)}. Only
+	 * the columns of the summary are selected, so the notes are never read or sent,
+	 * and without details the page is read from the project_name index alone. Each
+	 * row becomes one small record instead of a Project with three empty lists.
+	 *
+	 * @param after          The key of the last summary on the previous page, or
+	 *                       null for the first page.
+	 * @param pageSize       The maximum number of summaries on the page.
+	 * @param includeDetails True to also read the difficulty and hours, false for
+	 *                       just the ID and name.
+	 * @return The page. Its next key is null when there are no more projects.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public Page<ProjectSummary> fetchProjectSummaryPage(ProjectKey after, int pageSize, boolean includeDetails) {
+		return FETCH_PROJECT_SUMMARY_PAGE_METRICS.time(() -> {
+			if (pageSize < 1) {
+				throw new DbException("Page size must be at least 1: " + pageSize);
+			}
+
+			String sql;
+
+			if (includeDetails) {
+				sql = Objects.isNull(after) ? FIRST_SUMMARY_DETAIL_PAGE_SQL : NEXT_SUMMARY_DETAIL_PAGE_SQL;
+			} else {
+				sql = Objects.isNull(after) ? FIRST_SUMMARY_PAGE_SQL : NEXT_SUMMARY_PAGE_SQL;
+			}
+
+			Function<ResultSet, ProjectSummary> mapper = includeDetails ? this::extractSummaryWithDetails
+					: this::extractSummary;
+
+			try (Connection conn = DbConnection.getReadConnection()) {
+				startReadOnly(conn);
+
+				try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+					return readPage(stmt, after, pageSize, mapper, ProjectKey::of);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+		});
+	}
+
+	/**
+	 * This method hands every project, with its materials, steps and categories,
+	 * to the action a page at a time in name order. Each page costs one summary
+	 * query on the project_name index and the four queries of
+	 * {@link #fetchProjectsByIds(Collection)}, and only one page is held in memory,
+	 * so in-memory indexes can be built from any number of projects. Each page is
+	 * read on its own, so the pages are not one consistent snapshot.
+	 *
+	 * @param pageSize The number of projects per page.
+	 * @param action   Called with each page, on the calling thread.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public void forEachProjectGraphPage(int pageSize, Consumer<List<Project>> action) {
+		ProjectKey after = null;
+
+		do {
+			Page<ProjectSummary> page = fetchProjectSummaryPage(after, pageSize, false);
+			List<Integer> ids = page.items().stream().map(ProjectSummary::projectId).toList();
+
+			if (!ids.isEmpty()) {
+				action.accept(fetchProjectsByIds(ids));
+			}
+
+			after = page.next();
+		} while (Objects.nonNull(after));
+	}
+
+	// read by column position, a record has no fields the row mapper could set
+	private ProjectSummary extractSummary(ResultSet rs) {
+		try {
+			return new ProjectSummary(rs.getInt(1), rs.getString(2), null, null, null);
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private ProjectSummary extractSummaryWithDetails(ResultSet rs) {
+		try {
+			return new ProjectSummary(rs.getInt(1), rs.getString(2), rs.getObject(3, Integer.class),
+					rs.getBigDecimal(4), rs.getBigDecimal(5));
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	// runs a keyset page query whose parameters are the after key, if any, then the row limit
+	private <T> Page<T> readPage(PreparedStatement stmt, ProjectKey after, int pageSize,
+			Function<ResultSet, T> mapper, Function<T, ProjectKey> keyOf) throws SQLException {
+		int index = 1;
+
+		if (Objects.nonNull(after)) {
+			setParameter(stmt, index++, after.projectName(), String.class);
+			setParameter(stmt, index++, after.projectName(), String.class);
+			setParameter(stmt, index++, after.projectId(), Integer.class);
+		}
+
+		// one extra row tells us whether there is another page without a second query
+		setParameter(stmt, index, pageSize + 1, Integer.class);
+
+		try (ResultSet rs = stmt.executeQuery()) {
+			List<T> items = new ArrayList<>(pageSize + 1);
+
+			while (rs.next()) {
+				items.add(mapper.apply(rs));
+			}
+
+			ProjectKey next = null;
+
+			if (items.size() > pageSize) {
+				items.remove(pageSize);
+				next = keyOf.apply(items.get(pageSize - 1));
+			}
+
+			return new Page<>(items, next);
+		}
+	}
+
+	/*
+	 * A fetch size of Integer.MIN_VALUE is how MySQL's driver is told to stream rows one at a time.
+	 * Other drivers, such as H2's in the benchmarks, reject it and keep their own batched fetching.
+	 */
+	private static void streamRows(Statement stmt) {
+		try {
+			stmt.setFetchSize(Integer.MIN_VALUE);
+		} catch (SQLException e) {
+			// not MySQL, the driver's default fetch size applies
+		}
+	}
+
+	private static void closeQuietly(AutoCloseable resource) {
+		try {
+			resource.close();
+		} catch (Exception e) {
+			// already failing, the original exception is the one worth reporting
+		}
+	}
+
+	/*
+	 * The keys a graph insert fills in, taken before the insert so that they can be
+	 * put back if its transaction rolls back. Otherwise the caller's objects would
+	 * carry IDs that were never committed and step orders it did not choose.
+	 */
+	private static class GraphKeys {
+		private final List<Project> projects;
+		private final List<Integer> projectIds = new ArrayList<>();
+		private final List<Material> materials = new ArrayList<>();
+		private final List<Integer[]> materialKeys = new ArrayList<>();
+		private final List<Step> steps = new ArrayList<>();
+		private final List<Integer[]> stepKeys = new ArrayList<>();
+
+		private GraphKeys(List<Project> projects) {
+			this.projects = projects;
+
+			for (Project project : projects) {
+				projectIds.add(project.getProjectId());
+
+				for (Material material : project.getMaterials()) {
+					materials.add(material);
+					materialKeys.add(new Integer[] { material.getMaterialId(), material.getProjectId() });
+				}
+
+				for (Step step : project.getSteps()) {
+					steps.add(step);
+					stepKeys.add(new Integer[] { step.getStepId(), step.getProjectId(), step.getStepOrder() });
+				}
+			}
+		}
+
+		private void restore() {
+			for (int index = 0; index < projects.size(); index++) {
+				projects.get(index).setProjectId(projectIds.get(index));
+			}
+
+			for (int index = 0; index < materials.size(); index++) {
+				materials.get(index).setMaterialId(materialKeys.get(index)[0]);
+				materials.get(index).setProjectId(materialKeys.get(index)[1]);
+			}
+
+			for (int index = 0; index < steps.size(); index++) {
+				steps.get(index).setStepId(stepKeys.get(index)[0]);
+				steps.get(index).setProjectId(stepKeys.get(index)[1]);
+				steps.get(index).setStepOrder(stepKeys.get(index)[2]);
+			}
+		}
+	}
+
+	/*
+	 * Feeds result set rows to a stream one at a time and closes the result set,
+	 * statement and connection when the rows run out or the stream is closed. The
+	 * statement is passed in rather than read from the result set, which would give
+	 * the driver's statement instead of the tracked one that must be closed.
+	 */
+	private static class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+		private final Connection conn;
+		private final Statement stmt;
+		private final ResultSet rs;
+		private final Function<ResultSet, T> mapper;
+		private boolean closed;
+
+		private ResultSetSpliterator(Connection conn, Statement stmt, ResultSet rs, Function<ResultSet, T> mapper) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.conn = conn;
+			this.stmt = stmt;
+			this.rs = rs;
+			this.mapper = mapper;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if (closed) {
+				return false;
+			}
+
+			try {
+				if (rs.next()) {
+					action.accept(mapper.apply(rs));
+					return true;
+				}
+			} catch (SQLException e) {
+				close();
+				throw new DbException(e);
+			}
+
+			close();
+			return false;
+		}
+
+		private void close() {
+			if (!closed) {
+				closed = true;
+
+				closeQuietly(rs);
+				closeQuietly(stmt);
+				closeQuietly(conn);
+			}
+		}
+	}
+
+	// the fetch mode used by fetchProjectById(Integer), so callers can switch paths for benchmarking
+	private ProjectFetchMode fetchMode = ProjectFetchMode.SEPARATE_QUERIES;
+
+	public ProjectFetchMode getFetchMode() {
+		return fetchMode;
+	}
+
+	public void setFetchMode(ProjectFetchMode fetchMode) {
+		this.fetchMode = Objects.requireNonNull(fetchMode);
+	}
+
+	public Optional<Project> fetchProjectById(Integer projectId) {
+		return fetchProjectById(projectId, fetchMode);
+	}
+
+	public Optional<Project> fetchProjectById(Integer projectId, ProjectFetchMode mode) {
+		return FETCH_PROJECT_BY_ID_METRICS.time(() -> {
+			if (mode == ProjectFetchMode.SINGLE_ROUND_TRIP) {
+				return fetchProjectGraphInOneRoundTrip(projectId);
+			}
+
+			try (Connection conn = DbConnection.getReadConnection()) {
+				// the project and its children are read in one read-only transaction so they come from the same snapshot
+				startReadOnlyTransaction(conn);
+
+				try {
+					Project project = null;
+
+					try (PreparedStatement stmt = prepareStatement(conn, FETCH_PROJECT_SQL)) {
+						setParameter(stmt, 1, projectId, Integer.class);
+
+						try (ResultSet rs = stmt.executeQuery()) {
+							if (rs.next()) {
+								project = extractProject(rs);
+							}
+						}
+					}
+					if (Objects.nonNull(project)) {
+						project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId));
+						project.getSteps().addAll(fetchStepsForProject(conn, projectId));
+						project.getCategories().addAll(fetchCategoriesForProject(conn, projectId));
+
+					}
+
+					endReadOnlyTransaction(conn);
+
+					// we do Option.ofNullable because the project may be null at this point if the
+					// given project id is invalid
+					return Optional.ofNullable(project);
+
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+		});
+	}
+
+	/**
+	 * This method loads a project and all of its children with a single network
+	 * round trip. The four SELECT statements are sent as one multi-statement batch
+	 * inside a read-only transaction that uses a consistent snapshot, so the
+	 * children are read as of the same point in time as the project row, just like
+	 * the transaction in the separate queries path. The results come back in
+	 * statement order: the update counts of START TRANSACTION and COMMIT are
+	 * skipped and each result set is mapped to the next part of the graph.
+	 *
+	 * @param projectId The ID of the project to load.
+	 * @return The project with its materials, steps and categories, or an empty
+	 *         Optional if the project ID is invalid.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	private Optional<Project> fetchProjectGraphInOneRoundTrip(Integer projectId) {
+		try (Connection conn = DbConnection.getReadConnection()) {
+			// the batch starts and commits its own read-only transaction, so auto-commit stays on here
+			startReadOnly(conn);
+
+			try (PreparedStatement stmt = prepareStatement(conn, FETCH_PROJECT_GRAPH_SQL)) {
+				return readProjectGraph(stmt, projectId);
+			} catch (SQLException | RuntimeException e) {
+				rollbackBatchTransaction(conn);
+				throw e;
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
 
-		try (Connection conn = DbConnection.getConnection()) {
-			startTransaction(conn);
+	/*
+	 * A batch that failed or was cancelled part way never ran its own COMMIT, so its transaction is
+	 * still open on the server. The driver still reports auto-commit on, so neither rollback() nor
+	 * the pool's session reset would end it, and the next borrower would be left in the stale
+	 * read-only snapshot. The ROLLBACK is sent as SQL instead. If even that fails the connection is
+	 * aborted, and the pool drops it rather than handing it out again.
+	 */
+	private void rollbackBatchTransaction(Connection conn) {
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("ROLLBACK");
+		} catch (SQLException e) {
+			try {
+				conn.abort(Runnable::run);
+			} catch (SQLException abortFailed) {
+				// the connection is unusable either way
+			}
+		}
+	}
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-				setParameter(stmt, 1, project.getProjectName(), String.class);
-				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, project.getNotes(), String.class);
+	private Optional<Project> readProjectGraph(PreparedStatement stmt, Integer projectId) throws SQLException {
+		for (int index = 1; index <= 4; index++) {
+			setParameter(stmt, index, projectId, Integer.class);
+		}
 
-				stmt.executeUpdate();
+		Project project = null;
+		List<Material> materials = new LinkedList<>();
+		List<Step> steps = new LinkedList<>();
+		List<Category> categories = new LinkedList<>();
+		int resultSetNumber = 0;
+		boolean isResultSet = stmt.execute();
 
-				Integer projectId = getLastInsertId(conn, PROJECT_TABLE);
-				commitTransaction(conn);
+		while (isResultSet || stmt.getUpdateCount() != -1) {
+			if (isResultSet) {
+				try (ResultSet rs = stmt.getResultSet()) {
+					while (rs.next()) {
+						switch (resultSetNumber) {
+						case 0 -> project = extractProject(rs);
+						case 1 -> materials.add(extract(rs, Material.class));
+						case 2 -> steps.add(extract(rs, Step.class));
+						default -> categories.add(extract(rs, Category.class));
+						}
+					}
+				}
 
-				project.setProjectId(projectId);
-				return project;
-			} catch (Exception e) {
-				rollbackTransaction(conn);
-				throw new DbException(e);
+				resultSetNumber++;
 			}
-		} catch (SQLException e) {
-			throw new DbException(e);
+
+			isResultSet = stmt.getMoreResults();
 		}
+
+		if (Objects.nonNull(project)) {
+			project.getMaterials().addAll(materials);
+			project.getSteps().addAll(steps);
+			project.getCategories().addAll(categories);
+		}
+
+		return Optional.ofNullable(project);
 	}
 
-	public List<Project> fetchAllProjects() {
+	/**
+	 * This method loads many detailed projects at once. The IDs are split into
+	 * chunks of at most {@link #IN_CLAUSE_CHUNK_SIZE} and each chunk costs four
+	 * queries: the project rows, then all the materials, steps and categories for
+	 * those projects, each with an IN clause. The children are attached to their
+	 * parents through a map keyed by project ID, so loading N projects costs
+	 * 4 * ceil(N / chunk size) queries instead of 4 * N, all on one connection and
+	 * one read-only transaction.
+	 *
+	 * @param projectIds The IDs of the projects to load. Duplicates and nulls are
+	 *                   ignored.
+	 * @return The projects that exist, in the order their IDs were given. IDs with
+	 *         no project are left out.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public List<Project> fetchProjectsByIds(Collection<Integer> projectIds) {
+		return FETCH_PROJECTS_BY_IDS_METRICS.time(() -> {
+			List<Integer> ids = projectIds.stream().filter(Objects::nonNull).distinct().toList();
+
+			if (ids.isEmpty()) {
+				return new LinkedList<>();
+			}
 
-		String sql = "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_name";
+			try (Connection conn = DbConnection.getReadConnection()) {
+				startReadOnlyTransaction(conn);
 
-		try (Connection conn = DbConnection.getConnection()) {
-			startTransaction(conn);
+				try {
+					Map<Integer, Project> projectsById = new HashMap<>();
+
+					for (List<Integer> chunk : chunk(ids, IN_CLAUSE_CHUNK_SIZE)) {
+						fetchProjectGraphsForChunk(conn, chunk, projectsById);
+					}
+
+					endReadOnlyTransaction(conn);
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-				try (ResultSet rs = stmt.executeQuery()) {
 					List<Project> projects = new LinkedList<>();
 
-					while (rs.next()) {
-						projects.add(extract(rs, Project.class));
+					for (Integer projectId : ids) {
+						Project project = projectsById.get(projectId);
 
+						if (Objects.nonNull(project)) {
+							projects.add(project);
+						}
 					}
 
 					return projects;
-
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
 				}
-			} catch (Exception e) {
-				rollbackTransaction(conn);
+			} catch (SQLException e) {
 				throw new DbException(e);
 			}
-		} catch (SQLException e) {
-			throw new DbException(e);
-		}
+
+		});
 	}
 
-	public Optional<Project> fetchProjectById(Integer projectId) {
-		String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+	// runs the four IN-clause queries for one chunk of IDs and stitches the children onto their projects
+	private void fetchProjectGraphsForChunk(Connection conn, List<Integer> ids, Map<Integer, Project> projectsById)
+			throws SQLException {
+		String in = "(" + inClausePlaceholders(inClauseSize(ids.size())) + ")";
 
-		try (Connection conn = DbConnection.getConnection()) {
-			startTransaction(conn);
+		try (PreparedStatement stmt = prepareStatement(conn,
+				"SELECT * FROM " + PROJECT_TABLE + " WHERE project_id IN " + in)) {
+			setIdParameters(stmt, ids);
 
-			try {
-				Project project = null;
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Project project = extractProject(rs);
+					projectsById.put(project.getProjectId(), project);
+				}
+			}
+		}
 
-				try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-					setParameter(stmt, 1, projectId, Integer.class);
+		try (PreparedStatement stmt = prepareStatement(conn,
+				"SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id IN " + in)) {
+			setIdParameters(stmt, ids);
 
-					try (ResultSet rs = stmt.executeQuery()) {
-						if (rs.next()) {
-							project = extract(rs, Project.class);
-						}
-					}
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Material material = extract(rs, Material.class);
+					projectsById.get(material.getProjectId()).getMaterials().add(material);
 				}
-				if (Objects.nonNull(project)) {
-					project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId));
-					project.getSteps().addAll(fetchStepsForProject(conn, projectId));
-					project.getCategories().addAll(fetchCategoriesForProject(conn, projectId));
+			}
+		}
+
+		try (PreparedStatement stmt = prepareStatement(conn,
+				"SELECT * FROM " + STEP_TABLE + " WHERE project_id IN " + in + " ORDER BY step_order, step_id")) {
+			setIdParameters(stmt, ids);
 
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Step step = extract(rs, Step.class);
+					projectsById.get(step.getProjectId()).getSteps().add(step);
 				}
+			}
+		}
 
-				commitTransaction(conn);
+		// the category rows carry no project ID, so the join table's project_id is selected first
+		// @formatter:off
+		String categorySql = ""
+				+ "SELECT pc.project_id, c.* FROM " + CATEGORY_TABLE + " c "
+				+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+				+ "WHERE pc.project_id IN " + in;
+		// @formatter:on
 
-				// we do Option.ofNullable because the project may be null at this point if the
-				// given project id is invalid
-				return Optional.ofNullable(project);
+		try (PreparedStatement stmt = prepareStatement(conn, categorySql)) {
+			setIdParameters(stmt, ids);
 
-			} catch (Exception e) {
-				rollbackTransaction(conn);
-				throw new DbException(e);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Project project = projectsById.get(rs.getInt(1));
+					project.getCategories().add(extract(rs, Category.class));
+				}
 			}
-		} catch (SQLException e) {
-			throw new DbException(e);
 		}
 	}
 
+	// fills an IN clause of inClauseSize(ids.size()) placeholders and returns the index of the next parameter
+	private int setIdParameters(PreparedStatement stmt, List<Integer> ids) throws SQLException {
+		return setInClauseParameters(stmt, 1, ids, Integer.class);
+	}
+
 	/**
 	 * This method retrieves all the categories associated with the given project
 	 * ID. Note the inner join to join the category rows to the project_category
@@ -145,14 +1508,7 @@ public class ProjectDao extends DaoBase {
 	 * @throws DbException Thrown if an exception is thrown by the driver.
 	 */
 	private List<Category> fetchCategoriesForProject(Connection conn, Integer projectId) {
-		// @formatter:off
-	    String sql = ""
-	        + "SELECT c.* FROM " + CATEGORY_TABLE + " c "
-	        + "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
-	        + "WHERE project_id = ?";
-	    // @formatter:on
-
-		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+		try (PreparedStatement stmt = prepareStatement(conn, FETCH_CATEGORIES_SQL)) {
 			setParameter(stmt, 1, projectId, Integer.class);
 
 			try (ResultSet rs = stmt.executeQuery()) {
@@ -180,9 +1536,7 @@ public class ProjectDao extends DaoBase {
 	 * @throws SQLException Thrown if the database driver encounters an error.
 	 */
 	private List<Step> fetchStepsForProject(Connection conn, Integer projectId) throws SQLException {
-		String sql = "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ?";
-
-		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+		try (PreparedStatement stmt = prepareStatement(conn, FETCH_STEPS_SQL)) {
 			setParameter(stmt, 1, projectId, Integer.class);
 
 			try (ResultSet rs = stmt.executeQuery()) {
@@ -198,9 +1552,7 @@ public class ProjectDao extends DaoBase {
 	}
 
 	private List<Material> fetchMaterialsForProject(Connection conn, Integer projectId) throws SQLException {
-		String sql = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ?";
-
-		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+		try (PreparedStatement stmt = prepareStatement(conn, FETCH_MATERIALS_SQL)) {
 			setParameter(stmt, 1, projectId, Integer.class);
 
 			try (ResultSet rs = stmt.executeQuery()) {
@@ -220,72 +1572,490 @@ public class ProjectDao extends DaoBase {
 
 // KEY POINT, is this method examines return value from exectuteUPdate, a single row being acted on should return 1, if its 0 it means no rows were acted on and the Primary Key was not found, true if 1 false if 0
 
+	// a project that was loaded from the database only has the details that changed written, and
+	// none at all if nothing changed, in which case there's no round trip and the project is assumed
+	// to still exist. A project built by hand is untracked and has all its details written.
 	public boolean modifyProjectDetails(Project project) {
-		String sql = ""
-	
-				+ "UPDATE " + PROJECT_TABLE + " SET "
-				+ "project_name = ?, "
-				+ "estimated_hours = ?, "
-				+ "actual_hours = ?, "
-				+ "difficulty = ?, "
-				+ "notes = ? "
-				+ "WHERE project_id = ?";
-		
-		try (Connection conn = DbConnection.getConnection()) {
-			startTransaction(conn);
+		return MODIFY_PROJECT_DETAILS_METRICS.time(() -> {
+			if (project.isTracked() && !project.isModified()) {
+				return true;
+			}
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-				setParameter(stmt, 1, project.getProjectName(), String.class);
-				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, project.getNotes(), String.class);
-				setParameter(stmt, 6, project.getProjectId(), Integer.class);
-				
-				boolean modified = stmt.executeUpdate() == 1;
+			Set<Detail> details = project.isTracked() ? project.getModifiedDetails() : EnumSet.allOf(Detail.class);
+			boolean modified;
+
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try (PreparedStatement stmt = prepareStatement(conn, modifyProjectSql(details))) {
+					int index = 1;
+
+					for (Detail detail : details) {
+						switch (detail) {
+						case PROJECT_NAME -> setParameter(stmt, index++, project.getProjectName(), String.class);
+						case ESTIMATED_HOURS -> setParameter(stmt, index++, project.getEstimatedHours(), BigDecimal.class);
+						case ACTUAL_HOURS -> setParameter(stmt, index++, project.getActualHours(), BigDecimal.class);
+						case DIFFICULTY -> setParameter(stmt, index++, project.getDifficulty(), Integer.class);
+						case NOTES -> setParameter(stmt, index++, project.getNotes(), String.class);
+						}
+					}
+
+					setParameter(stmt, index, project.getProjectId(), Integer.class);
+
+					modified = stmt.executeUpdate() == 1;
+					commitTransaction(conn);
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+			if (modified) {
+				project.markClean();
+				fireProjectDetailsChanged(List.of(project));
+			}
+
+			return modified;
+		});
+	}
+
+	// the details are always in the same order, so each combination is one statement in the cache
+	private String modifyProjectSql(Set<Detail> details) {
+		StringJoiner columns = new StringJoiner(", ", MODIFY_PROJECT_SQL, MODIFY_PROJECT_WHERE_SQL);
+
+		for (Detail detail : details) {
+			columns.add(switch (detail) {
+			case PROJECT_NAME -> "project_name = ?";
+			case ESTIMATED_HOURS -> "estimated_hours = ?";
+			case ACTUAL_HOURS -> "actual_hours = ?";
+			case DIFFICULTY -> "difficulty = ?";
+			case NOTES -> "notes = ?";
+			});
+		}
+
+		return columns.toString();
+	}
+
+	/**
+	 * This method appends steps to the end of a project's step list. The project
+	 * row is locked and the highest step order read in one query, then the steps
+	 * are numbered {@link #STEP_ORDER_GAP} apart after it and written as JDBC
+	 * batches. The number of round trips does not depend on how many steps the
+	 * project already has, unlike counting the steps for each new one.
+	 *
+	 * @param projectId The project to add the steps to.
+	 * @param steps     The steps, in the order they are to follow the existing
+	 *                  ones. Any step order they have is replaced. On success
+	 *                  each has its step ID, project ID and step order set.
+	 * @return The same list of steps.
+	 * @throws DbException Thrown if the project does not exist or if an exception
+	 *                     is thrown by the driver. No step is added in that case.
+	 */
+	public List<Step> addSteps(Integer projectId, List<Step> steps) {
+		return ADD_STEPS_METRICS.time(() -> {
+			if (steps.isEmpty()) {
+				return steps;
+			}
+
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try {
+					Integer last = lockProjectSteps(conn, projectId);
+
+					// renumbering first frees the room if the keys would run past the top of an INT
+					if (Objects.nonNull(last) && (long)last + (long)steps.size() * STEP_ORDER_GAP > Integer.MAX_VALUE) {
+						last = renumberSteps(conn, projectId);
+					}
+
+					int stepOrder = Objects.isNull(last) ? 0 : last;
+
+					for (Step step : steps) {
+						stepOrder += STEP_ORDER_GAP;
+						step.setProjectId(projectId);
+						step.setStepOrder(stepOrder);
+					}
+
+					batchInsert(conn, INSERT_STEP_SQL, steps, this::setStepParameters, Step::setStepId);
+					commitTransaction(conn);
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+			fireStepsAdded(steps);
+			return steps;
+		});
+	}
+
+	/**
+	 * This method adds one step to a project directly after another step, or
+	 * first if no step is given. The new step is given the step order halfway
+	 * between its neighbours, so no other step is touched. Only when two
+	 * neighbours are numbered one apart are the project's steps renumbered
+	 * {@link #STEP_ORDER_GAP} apart, once, to open the gaps up again.
+	 *
+	 * @param projectId   The project to add the step to.
+	 * @param step        The step to add. On success it has its step ID, project
+	 *                    ID and step order set.
+	 * @param afterStepId The step to put the new one after, or null to put it
+	 *                    first.
+	 * @return The same step.
+	 * @throws DbException Thrown if the project does not exist, if the step to
+	 *                     follow is not one of its steps, or if an exception is
+	 *                     thrown by the driver.
+	 */
+	public Step insertStep(Integer projectId, Step step, Integer afterStepId) {
+		return INSERT_STEP_METRICS.time(() -> {
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try {
+					lockProjectSteps(conn, projectId);
+
+					step.setProjectId(projectId);
+					step.setStepOrder(allocateStepOrder(conn, projectId, afterStepId, null));
+
+					batchInsert(conn, INSERT_STEP_SQL, List.of(step), this::setStepParameters, Step::setStepId);
+					commitTransaction(conn);
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+			fireStepsAdded(List.of(step));
+			return step;
+		});
+	}
+
+	/**
+	 * This method moves a step of a project to directly after another of its
+	 * steps, or first if no step is given. Only the moved step is written, unless
+	 * there is no room left between its new neighbours; see
+	 * {@link #insertStep(Integer, Step, Integer)}.
+	 *
+	 * @param projectId   The project the step belongs to.
+	 * @param stepId      The step to move.
+	 * @param afterStepId The step to put it after, or null to put it first.
+	 * @return true if the step was moved, false if the project has no such step.
+	 * @throws DbException Thrown if the project does not exist, if the step to
+	 *                     follow is not one of its steps or is the step itself, or
+	 *                     if an exception is thrown by the driver.
+	 */
+	public boolean moveStep(Integer projectId, Integer stepId, Integer afterStepId) {
+		return MOVE_STEP_METRICS.time(() -> {
+			if (Objects.equals(stepId, afterStepId)) {
+				throw new DbException("Step with ID=" + stepId + " cannot be moved after itself.");
+			}
+
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try {
+					lockProjectSteps(conn, projectId);
+
+					if (fetchStepOrder(conn, projectId, stepId).isEmpty()) {
 						commitTransaction(conn);
-						
-						return modified;
-				
-		} 
-			catch (Exception e) {
-				rollbackTransaction(conn);
+						return false;
+					}
+
+					int stepOrder = allocateStepOrder(conn, projectId, afterStepId, stepId);
+					boolean moved;
+
+					try (PreparedStatement stmt = prepareStatement(conn, MOVE_STEP_SQL)) {
+						setParameter(stmt, 1, stepOrder, Integer.class);
+						setParameter(stmt, 2, stepId, Integer.class);
+						setParameter(stmt, 3, projectId, Integer.class);
+
+						moved = stmt.executeUpdate() == 1;
+					}
+
+					commitTransaction(conn);
+					return moved;
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
 				throw new DbException(e);
 			}
-		} catch (SQLException e) {
-			
-			throw new DbException(e);
+		});
+	}
+
+	// locks the project row until the transaction ends and returns its highest step order, null if it has no steps
+	private Integer lockProjectSteps(Connection conn, Integer projectId) throws SQLException {
+		try (PreparedStatement stmt = prepareStatement(conn, LOCK_PROJECT_STEPS_SQL)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (!rs.next()) {
+					throw new DbException("Project with ID=" + projectId + " does not exist.");
+				}
+
+				int last = rs.getInt(2);
+				return rs.wasNull() ? null : last;
+			}
+		}
+	}
+
+	/*
+	 * Picks a free step order directly after one step, or first if afterStepId is null. The moving
+	 * step, if any, is left out of the neighbours, since it is leaving its old place. When the
+	 * neighbours leave no room the steps are renumbered and the key is picked again, which always
+	 * finds room. Called with the project row locked.
+	 */
+	private int allocateStepOrder(Connection conn, Integer projectId, Integer afterStepId, Integer movingStepId)
+			throws SQLException {
+		// step IDs start at 1, so 0 leaves nothing out
+		int moving = Objects.isNull(movingStepId) ? 0 : movingStepId;
+		boolean renumbered = false;
+
+		while (true) {
+			long stepOrder;
+
+			if (Objects.isNull(afterStepId)) {
+				Optional<Integer> first = fetchStepOrder(conn, FETCH_FIRST_STEP_ORDER_SQL, projectId, moving);
+				stepOrder = first.isEmpty() ? STEP_ORDER_GAP : (long)first.get() - STEP_ORDER_GAP;
+			} else {
+				int previous = fetchStepOrder(conn, projectId, afterStepId).orElseThrow(() -> new DbException(
+						"Step with ID=" + afterStepId + " is not a step of project with ID=" + projectId + "."));
+				Optional<Integer> next = fetchStepOrder(conn, FETCH_NEXT_STEP_ORDER_SQL, projectId, previous,
+						afterStepId, moving);
+
+				if (next.isEmpty()) {
+					stepOrder = (long)previous + STEP_ORDER_GAP;
+				} else if ((long)next.get() - previous > 1) {
+					stepOrder = ((long)previous + next.get()) / 2;
+				} else {
+					stepOrder = Long.MIN_VALUE;
+				}
+			}
+
+			if (stepOrder >= Integer.MIN_VALUE && stepOrder <= Integer.MAX_VALUE) {
+				return (int)stepOrder;
+			}
+
+			if (renumbered) {
+				throw new DbException("Project with ID=" + projectId + " has too many steps to number.");
+			}
+
+			renumberSteps(conn, projectId);
+			renumbered = true;
+		}
+	}
+
+	private Optional<Integer> fetchStepOrder(Connection conn, Integer projectId, Integer stepId) throws SQLException {
+		return fetchStepOrder(conn, FETCH_STEP_ORDER_SQL, stepId, projectId);
+	}
+
+	// runs one of the step order queries, which all return a single INT that may be null or missing
+	private Optional<Integer> fetchStepOrder(Connection conn, String sql, Integer... parameters) throws SQLException {
+		try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+			for (int index = 0; index < parameters.length; index++) {
+				setParameter(stmt, index + 1, parameters[index], Integer.class);
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (!rs.next()) {
+					return Optional.empty();
+				}
+
+				int stepOrder = rs.getInt(1);
+				return rs.wasNull() ? Optional.empty() : Optional.of(stepOrder);
+			}
+		}
+	}
+
+	// numbers the project's steps STEP_ORDER_GAP apart in their current order, returns the highest step order
+	private Integer renumberSteps(Connection conn, Integer projectId) throws SQLException {
+		List<Integer> stepIds = new ArrayList<>();
+
+		try (PreparedStatement stmt = prepareStatement(conn, FETCH_STEP_IDS_SQL)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					stepIds.add(rs.getInt(1));
+				}
+			}
+		}
+
+		if ((long)stepIds.size() * STEP_ORDER_GAP > Integer.MAX_VALUE) {
+			throw new DbException("Project with ID=" + projectId + " has too many steps to number.");
+		}
+
+		try (PreparedStatement stmt = prepareStatement(conn, MODIFY_STEP_ORDER_SQL)) {
+			for (int index = 0; index < stepIds.size(); index++) {
+				setParameter(stmt, 1, (index + 1) * STEP_ORDER_GAP, Integer.class);
+				setParameter(stmt, 2, stepIds.get(index), Integer.class);
+				stmt.addBatch();
+
+				if ((index + 1) % insertBatchSize == 0 || index == stepIds.size() - 1) {
+					stmt.executeBatch();
+				}
+			}
 		}
+
+		return stepIds.isEmpty() ? null : stepIds.size() * STEP_ORDER_GAP;
+	}
+
+	// a loaded project tracks its changes from the values just read
+	private Project extractProject(ResultSet rs) {
+		Project project = extract(rs, Project.class);
+		project.markClean();
+		return project;
 	}
 	
 	// test this in the video, pick option 8 without selecting a project to get an error msg
 	// then test by selecting a project	
 
 	public boolean deleteProject(Integer projectId) {
-		String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
-		
-		try (Connection conn = DbConnection.getConnection()) {
+		return DELETE_PROJECT_METRICS.time(() -> {
+			boolean deleted;
+
+			try (Connection conn = DbConnection.getConnection()) {
+				startTransaction(conn);
+
+				try (PreparedStatement stmt = prepareStatement(conn, DELETE_PROJECT_SQL)) {
+					setParameter(stmt, 1, projectId, Integer.class);
+
+					deleted = stmt.executeUpdate() == 1;
+					commitTransaction(conn);
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+
+			if (deleted) {
+				fireProjectsDeleted(List.of(projectId));
+			}
+
+			return deleted;
+		});
+	}
+
+
+	// how many child rows deleteProjects removes per DELETE statement and transaction
+	private int deleteBatchSize = 1_000;
+
+	public int getDeleteBatchSize() {
+		return deleteBatchSize;
+	}
+
+	public void setDeleteBatchSize(int deleteBatchSize) {
+		if (deleteBatchSize < 1) {
+			throw new DbException("Delete batch size must be at least 1: " + deleteBatchSize);
+		}
+
+		this.deleteBatchSize = deleteBatchSize;
+	}
+
+	public DeleteProgress deleteProjects(Collection<Integer> projectIds) {
+		return deleteProjects(projectIds, progress -> {
+		});
+	}
+
+	/**
+	 * This method deletes many projects without holding locks for long. Deleting a
+	 * project row on its own makes ON DELETE CASCADE remove all of its materials,
+	 * steps and category links in the same statement, so a big project keeps
+	 * thousands of row locks until the commit. Here the IDs are taken in chunks of
+	 * {@link #IN_CLAUSE_CHUNK_SIZE}. For each chunk, the project_category, material
+	 * and step rows are deleted with DELETE ... LIMIT {@link #getDeleteBatchSize()},
+	 * committing after every statement, until none are left. Then the project rows
+	 * of the chunk are deleted and committed, with nothing left to cascade.
+	 *
+	 * The delete as a whole is not atomic. If it fails, the chunks already
+	 * committed stay deleted and a project may be left with only some of its
+	 * children; deleting the same IDs again finishes the job.
+	 *
+	 * @param projectIds The IDs of the projects to delete. Duplicates, nulls and
+	 *                   IDs with no project are skipped.
+	 * @param listener   Called on the calling thread after each chunk of projects
+	 *                   is committed.
+	 * @return The final progress, with the number of projects and child rows
+	 *         deleted.
+	 * @throws DbException Thrown if an exception is thrown by the driver.
+	 */
+	public DeleteProgress deleteProjects(Collection<Integer> projectIds, Consumer<DeleteProgress> listener) {
+		return DELETE_PROJECTS_METRICS.time(() -> {
+			List<Integer> ids = projectIds.stream().filter(Objects::nonNull).distinct().toList();
+			List<Integer> deletedIds = new ArrayList<>();
+			int processed = 0;
+			int deleted = 0;
+			long childRows = 0;
+
+			try (Connection conn = DbConnection.getConnection()) {
+				for (List<Integer> chunk : chunk(ids, IN_CLAUSE_CHUNK_SIZE)) {
+					String in = "(" + inClausePlaceholders(inClauseSize(chunk.size())) + ")";
+
+					for (String table : CHILD_TABLES) {
+						childRows += deleteInBatches(conn,
+								"DELETE FROM " + table + " WHERE project_id IN " + in + " LIMIT ?", chunk);
+					}
+
+					startTransaction(conn);
+
+					try (PreparedStatement stmt = prepareStatement(conn,
+							"DELETE FROM " + PROJECT_TABLE + " WHERE project_id IN " + in)) {
+						setIdParameters(stmt, chunk);
+
+						deleted += stmt.executeUpdate();
+						commitTransaction(conn);
+						deletedIds.addAll(chunk);
+					} catch (Exception e) {
+						rollbackTransaction(conn);
+						throw new DbException(e);
+					}
+
+					processed += chunk.size();
+					listener.accept(new DeleteProgress(ids.size(), processed, deleted, childRows));
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			} finally {
+				// the chunks that committed before any failure
+				fireProjectsDeleted(deletedIds);
+			}
+
+			return new DeleteProgress(ids.size(), processed, deleted, childRows);
+		});
+	}
+
+	// runs the DELETE ... LIMIT until it deletes less than a full batch, one transaction per statement
+	private long deleteInBatches(Connection conn, String sql, List<Integer> ids) throws SQLException {
+		long total = 0;
+		int count;
+
+		do {
 			startTransaction(conn);
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-				setParameter(stmt, 1, projectId, Integer.class);
-				
-				boolean deleted = stmt.executeUpdate() == 1;
+			try (PreparedStatement stmt = prepareStatement(conn, sql)) {
+				setParameter(stmt, setIdParameters(stmt, ids), deleteBatchSize, Integer.class);
+
+				count = stmt.executeUpdate();
 				commitTransaction(conn);
-				
-				return deleted;
-		
-} 
-	catch (Exception e) {
-		rollbackTransaction(conn);
-		throw new DbException(e);
-	}
-} catch (SQLException e) {
-	
-	throw new DbException(e);
-}
-}
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
 
+			total += count;
+		} while (count == deleteBatchSize);
+
+		return total;
+	}
 				
 }
 	
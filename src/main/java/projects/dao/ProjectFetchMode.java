@@ -0,0 +1,20 @@
+package projects.dao;
+
+/**
+ * Selects how {@link ProjectDao#fetchProjectById(Integer, ProjectFetchMode)} loads a project with its
+ * materials, steps and categories.
+ */
+public enum ProjectFetchMode {
+	/*
+	 * One statement for the project row and one for each child table, all inside a transaction. This
+	 * is four network round trips plus the transaction bookkeeping.
+	 */
+	SEPARATE_QUERIES,
+
+	/*
+	 * All four SELECTs, wrapped in a read-only consistent-snapshot transaction, are sent as a single
+	 * multi-statement batch and the result sets are read back one after another. This is one round
+	 * trip. It needs allowMultiQueries=true on the connection URL, which DbConnection sets.
+	 */
+	SINGLE_ROUND_TRIP
+}
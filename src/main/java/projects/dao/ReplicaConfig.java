@@ -0,0 +1,63 @@
+package projects.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings for sending reads to MySQL replicas through {@link ReplicaRouter}. With no replica URLs,
+ * which is the default, every read goes to the primary just like a write. Each replica gets its
+ * own {@link ConnectionPool} built from the same {@link PoolConfig} as the primary. Times are in
+ * milliseconds.
+ */
+public class ReplicaConfig {
+	private List<String> replicaUrls = new ArrayList<>();
+	private long healthCheckIntervalMillis = 5_000;
+	private int maxReplicationLagSeconds = 0;
+	private long readYourWritesMillis = 2_000;
+
+	// JDBC URLs of the replicas, reads are spread over them round robin; options the primary URL has
+	// and a replica URL leaves out, credentials included, are taken from the primary URL
+	public List<String> getReplicaUrls() {
+		return replicaUrls;
+	}
+
+	public void setReplicaUrls(List<String> replicaUrls) {
+		this.replicaUrls = new ArrayList<>(replicaUrls);
+	}
+
+	// how often each replica is checked, a replica that fails a check gets no reads until it passes one
+	public long getHealthCheckIntervalMillis() {
+		return healthCheckIntervalMillis;
+	}
+
+	public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+		this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+	}
+
+	// a replica further behind than this is taken out of rotation, 0 skips the lag check (it needs the
+	// REPLICATION CLIENT privilege)
+	public int getMaxReplicationLagSeconds() {
+		return maxReplicationLagSeconds;
+	}
+
+	public void setMaxReplicationLagSeconds(int maxReplicationLagSeconds) {
+		this.maxReplicationLagSeconds = maxReplicationLagSeconds;
+	}
+
+	// after any thread commits a write, all reads go to the primary for this long so the change is
+	// seen whichever thread reads it next, 0 turns read-your-writes off
+	public long getReadYourWritesMillis() {
+		return readYourWritesMillis;
+	}
+
+	public void setReadYourWritesMillis(long readYourWritesMillis) {
+		this.readYourWritesMillis = readYourWritesMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "replicas=" + replicaUrls.size() + ", healthCheckIntervalMillis=" + healthCheckIntervalMillis
+				+ ", maxReplicationLagSeconds=" + maxReplicationLagSeconds + ", readYourWritesMillis="
+				+ readYourWritesMillis;
+	}
+}
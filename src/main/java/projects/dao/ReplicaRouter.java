@@ -0,0 +1,278 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.exception.DbException;
+
+/**
+ * Spreads read connections over a set of MySQL replicas, each with its own
+ * {@link ConnectionPool}. Replicas are used round robin. A background task checks every replica on
+ * an interval: a replica that cannot be reached, or that is further behind the primary than the
+ * configured lag, is taken out of rotation until it passes a check again. A replica that fails to
+ * hand out a connection between checks is taken out straight away and the next one is tried. When
+ * no replica can serve the read, it goes to the primary pool.
+ *
+ * A replica URL takes every option of the primary URL that it does not set itself, so a replica
+ * behaves like the primary (multi-statement batches, batch rewriting, server-side prepared
+ * statements) and may leave out the credentials when they are the same.
+ *
+ * The router never closes the primary pool; it belongs to {@link DbConnection}.
+ */
+public class ReplicaRouter implements AutoCloseable {
+	private static final String REPLICA_STATUS_SQL = "SHOW REPLICA STATUS";
+
+	private final ConnectionPool primary;
+	private final ReplicaConfig config;
+	private final List<Replica> replicas = new ArrayList<>();
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	private final ScheduledExecutorService healthChecker;
+
+	private final LongAdder replicaReads = new LongAdder();
+	private final LongAdder primaryReads = new LongAdder();
+	private final LongAdder failovers = new LongAdder();
+
+	public ReplicaRouter(ConnectionPool primary, String primaryUrl, ReplicaConfig config, PoolConfig poolConfig) {
+		if (config.getReplicaUrls().isEmpty()) {
+			throw new DbException("At least one replica URL is needed to route reads");
+		}
+
+		this.primary = primary;
+		this.config = config;
+
+		int number = 0;
+
+		for (String url : config.getReplicaUrls()) {
+			replicas.add(new Replica(++number, new ConnectionPool(withPrimaryOptions(url, primaryUrl), poolConfig)));
+		}
+
+		healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "projects-replica-health");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, config.getHealthCheckIntervalMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection for reading from the next healthy replica, falling back to the primary if
+	 * none can serve it.
+	 *
+	 * @return A connection that must be closed by the caller to return it to its pool.
+	 * @throws DbException Thrown if the primary cannot hand out a connection either.
+	 */
+	public Connection getReadConnection() {
+		int count = replicas.size();
+		int start = Math.floorMod(nextReplica.getAndIncrement(), count);
+
+		for (int offset = 0; offset < count; offset++) {
+			Replica replica = replicas.get((start + offset) % count);
+
+			if (!replica.healthy) {
+				continue;
+			}
+
+			try {
+				Connection conn = replica.pool.getConnection();
+				replicaReads.increment();
+				return conn;
+			} catch (DbException e) {
+				// a timeout only means the replica is busy, a failure to connect means it is down
+				if (e.getCause() instanceof SQLException) {
+					replica.markDown(e.getCause().getMessage());
+				}
+			}
+		}
+
+		failovers.increment();
+		return getPrimaryConnection();
+	}
+
+	// used for reads that must see the latest writes
+	public Connection getPrimaryConnection() {
+		Connection conn = primary.getConnection();
+		primaryReads.increment();
+		return conn;
+	}
+
+	// the replica URL with the options of the primary URL that it does not set added to its query string
+	static String withPrimaryOptions(String replicaUrl, String primaryUrl) {
+		int primaryQuery = primaryUrl.indexOf('?');
+
+		if (primaryQuery < 0) {
+			return replicaUrl;
+		}
+
+		int replicaQuery = replicaUrl.indexOf('?');
+		Set<String> replicaKeys = new HashSet<>();
+
+		if (replicaQuery >= 0) {
+			for (String option : replicaUrl.substring(replicaQuery + 1).split("&")) {
+				replicaKeys.add(optionKey(option));
+			}
+		}
+
+		List<String> added = new ArrayList<>();
+
+		for (String option : primaryUrl.substring(primaryQuery + 1).split("&")) {
+			if (!option.isEmpty() && replicaKeys.add(optionKey(option))) {
+				added.add(option);
+			}
+		}
+
+		if (added.isEmpty()) {
+			return replicaUrl;
+		}
+
+		String separator = replicaQuery < 0 ? "?" : replicaUrl.endsWith("?") || replicaUrl.endsWith("&") ? "" : "&";
+		return replicaUrl + separator + String.join("&", added);
+	}
+
+	private static String optionKey(String option) {
+		int equals = option.indexOf('=');
+		return (equals < 0 ? option : option.substring(0, equals)).toLowerCase(Locale.ROOT);
+	}
+
+	private void checkReplicas() {
+		for (Replica replica : replicas) {
+			try {
+				String problem = check(replica);
+
+				if (Objects.isNull(problem)) {
+					replica.markUp();
+				} else {
+					replica.markDown(problem);
+				}
+			} catch (DbException e) {
+				// as in getReadConnection, a busy pool is not a reason to take the replica out
+				if (e.getCause() instanceof SQLException) {
+					replica.markDown(e.getCause().getMessage());
+				}
+			}
+		}
+	}
+
+	// returns null if the replica can take reads, otherwise the reason it cannot
+	private String check(Replica replica) {
+		try (Connection conn = replica.pool.getConnection()) {
+			if (!conn.isValid(replica.pool.getConfig().getValidationTimeoutSeconds())) {
+				return "connection is not valid";
+			}
+
+			if (config.getMaxReplicationLagSeconds() <= 0) {
+				return null;
+			}
+
+			try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(REPLICA_STATUS_SQL)) {
+				if (!rs.next()) {
+					return "not configured as a replica";
+				}
+
+				long lag = rs.getLong("Seconds_Behind_Source");
+
+				if (rs.wasNull()) {
+					return "replication is not running";
+				}
+
+				if (lag > config.getMaxReplicationLagSeconds()) {
+					return "replication lag of " + lag + "s is over " + config.getMaxReplicationLagSeconds() + "s";
+				}
+
+				return null;
+			}
+		} catch (SQLException e) {
+			return e.getMessage();
+		}
+	}
+
+	@Override
+	public void close() {
+		healthChecker.shutdownNow();
+
+		for (Replica replica : replicas) {
+			replica.pool.close();
+		}
+	}
+
+	public ReplicaConfig getConfig() {
+		return config;
+	}
+
+	public int getReplicaCount() {
+		return replicas.size();
+	}
+
+	public int getHealthyReplicaCount() {
+		return (int)replicas.stream().filter(replica -> replica.healthy).count();
+	}
+
+	public long getReplicaReads() {
+		return replicaReads.sum();
+	}
+
+	// reads sent to the primary, whether by failover or for read-your-writes
+	public long getPrimaryReads() {
+		return primaryReads.sum();
+	}
+
+	public long getFailovers() {
+		return failovers.sum();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("ReplicaRouter[replicaReads=").append(getReplicaReads())
+				.append(", primaryReads=").append(getPrimaryReads()).append(", failovers=").append(getFailovers());
+
+		for (Replica replica : replicas) {
+			builder.append(", replica ").append(replica.number).append('=')
+					.append(replica.healthy ? "up " : "down ").append(replica.pool);
+		}
+
+		return builder.append(']').toString();
+	}
+
+	/*
+	 * One replica's pool and whether it is in rotation. Replicas are logged by number rather than URL
+	 * because the URL may hold a password.
+	 */
+	private static class Replica {
+		private final int number;
+		private final ConnectionPool pool;
+		private volatile boolean healthy = true;
+
+		private Replica(int number, ConnectionPool pool) {
+			this.number = number;
+			this.pool = pool;
+		}
+
+		private void markDown(String reason) {
+			if (healthy) {
+				healthy = false;
+				System.out.println("Replica " + number + " taken out of rotation: " + reason);
+			}
+		}
+
+		private void markUp() {
+			if (!healthy) {
+				healthy = true;
+				System.out.println("Replica " + number + " back in rotation");
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * The rule for the hours and cost values of projects and materials, which are kept in DECIMAL(7,2)
+ * columns. The menu, the importer and the HTTP front end all check values through here, so a value
+ * is accepted or refused the same way whichever way it comes in.
+ */
+public final class Amounts {
+  /** The digits before the point that a DECIMAL(7,2) column holds. */
+  public static final int MAX_INTEGER_DIGITS = 5;
+
+  private Amounts() {
+  }
+
+  /**
+   * Brings a value to the two decimal places of its column. The size of the value is checked
+   * before it is rescaled, so a number such as 1e99999999 is refused at once instead of being
+   * expanded digit by digit.
+   *
+   * @param value The number as parsed.
+   * @return The number with a scale of two.
+   * @throws ArithmeticException Thrown if the number has more than two decimal places or more than
+   *         {@value #MAX_INTEGER_DIGITS} digits before the point. The message completes a sentence
+   *         that starts with the field.
+   */
+  public static BigDecimal toColumnScale(BigDecimal value) {
+    BigDecimal stripped = value.stripTrailingZeros();
+
+    if(stripped.scale() > 2) {
+      throw new ArithmeticException("must have at most two decimal places");
+    }
+
+    if(stripped.precision() - stripped.scale() > MAX_INTEGER_DIGITS) {
+      throw new ArithmeticException(
+          "must have at most " + MAX_INTEGER_DIGITS + " digits before the decimal point");
+    }
+
+    return stripped.setScale(2);
+  }
+}
@@ -0,0 +1,17 @@
+package projects.entity;
+
+/**
+ * How far a bulk delete has got. One is reported after each chunk of projects is committed, and
+ * the last one is the result of the whole delete.
+ *
+ * @param projectsRequested The number of distinct project IDs given.
+ * @param projectsProcessed The project IDs handled so far, whether or not a project existed.
+ * @param projectsDeleted The project rows deleted so far.
+ * @param childRowsDeleted The material, step and project_category rows deleted so far.
+ */
+public record DeleteProgress(int projectsRequested, int projectsProcessed, int projectsDeleted,
+    long childRowsDeleted) {
+  public boolean isDone() {
+    return projectsProcessed == projectsRequested;
+  }
+}
@@ -0,0 +1,14 @@
+package projects.entity;
+
+/**
+ * Where an import of a file has got to, saved in the same transaction as each chunk of projects it
+ * writes. A resumed import starts reading at the offset, so every project before it is written
+ * exactly once, however the last run ended.
+ *
+ * @param source The absolute path of the file being imported.
+ * @param byteOffset The offset of the first byte not yet imported, always the start of a line.
+ * @param lineNumber The line number at that offset, counting from 1.
+ * @param projectsImported The projects imported from the file so far, over all runs.
+ */
+public record ImportCheckpoint(String source, long byteOffset, long lineNumber, long projectsImported) {
+}
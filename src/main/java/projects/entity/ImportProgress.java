@@ -0,0 +1,36 @@
+package projects.entity;
+
+import java.time.Duration;
+
+/**
+ * How far an import has got. One is reported after each chunk of projects is committed, and the
+ * last one is the result of the whole import. The counts and rates cover this run only; a resumed
+ * import starts them again from zero at its checkpoint.
+ *
+ * @param bytesImported The offset in the file up to which every project is committed.
+ * @param bytesTotal The size of the file.
+ * @param projectsImported The projects written by this run.
+ * @param materialsImported The materials written by this run.
+ * @param stepsImported The steps written by this run.
+ * @param elapsed The time since this run started.
+ */
+public record ImportProgress(long bytesImported, long bytesTotal, long projectsImported,
+    long materialsImported, long stepsImported, Duration elapsed) {
+  public boolean isDone() {
+    return bytesImported == bytesTotal;
+  }
+
+  public double projectsPerSecond() {
+    return perSecond(projectsImported);
+  }
+
+  // projects, materials and steps together, each one a row written
+  public double rowsPerSecond() {
+    return perSecond(projectsImported + materialsImported + stepsImported);
+  }
+
+  private double perSecond(long count) {
+    long nanos = elapsed.toNanos();
+    return nanos == 0 ? 0 : count * 1e9 / nanos;
+  }
+}
@@ -0,0 +1,17 @@
+package projects.entity;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One page of a keyset-paginated listing.
+ *
+ * @param <T> The type of item on the page.
+ * @param items The items on this page, in order.
+ * @param next The cursor to pass back to get the next page, or null if this is the last page.
+ */
+public record Page<T>(List<T> items, ProjectKey next) {
+  public boolean hasNext() {
+    return Objects.nonNull(next);
+  }
+}
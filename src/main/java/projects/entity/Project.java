@@ -4,14 +4,26 @@
 package projects.entity;
 
 import java.math.BigDecimal;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Promineo
  *
  */
 public class Project {
+  /**
+   * The detail fields that can be changed after a project is loaded, as written by
+   * {@code ProjectDao.modifyProjectDetails}.
+   */
+  public enum Detail {
+    PROJECT_NAME, ESTIMATED_HOURS, ACTUAL_HOURS, DIFFICULTY, NOTES
+  }
+
   private Integer projectId;
   private String projectName;
   private BigDecimal estimatedHours;
@@ -23,6 +35,13 @@ public class Project {
   private List<Step> steps = new LinkedList<>();
   private List<Category> categories = new LinkedList<>();
 
+  /*
+   * Change tracking. These are final so the row mapper, which only sets non-final fields, never
+   * touches them when a row is loaded.
+   */
+  private final AtomicBoolean tracked = new AtomicBoolean();
+  private final Set<Detail> modifiedDetails = EnumSet.noneOf(Detail.class);
+
   public Integer getProjectId() {
     return projectId;
   }
@@ -36,6 +55,7 @@ public class Project {
   }
 
   public void setProjectName(String projectName) {
+    markModified(Detail.PROJECT_NAME, this.projectName, projectName);
     this.projectName = projectName;
   }
 
@@ -44,6 +64,7 @@ public class Project {
   }
 
   public void setEstimatedHours(BigDecimal estimatedHours) {
+    markModified(Detail.ESTIMATED_HOURS, this.estimatedHours, estimatedHours);
     this.estimatedHours = estimatedHours;
   }
 
@@ -52,6 +73,7 @@ public class Project {
   }
 
   public void setActualHours(BigDecimal actualHours) {
+    markModified(Detail.ACTUAL_HOURS, this.actualHours, actualHours);
     this.actualHours = actualHours;
   }
 
@@ -60,6 +82,7 @@ public class Project {
   }
 
   public void setDifficulty(Integer difficulty) {
+    markModified(Detail.DIFFICULTY, this.difficulty, difficulty);
     this.difficulty = difficulty;
   }
 
@@ -68,6 +91,7 @@ public class Project {
   }
 
   public void setNotes(String notes) {
+    markModified(Detail.NOTES, this.notes, notes);
     this.notes = notes;
   }
 
@@ -83,6 +107,74 @@ public class Project {
     return categories;
   }
 
+  /**
+   * Starts tracking changes from the project's current values. The DAO calls this once a project
+   * has been loaded or written, so from then on only the details set to a different value are
+   * reported as modified.
+   */
+  public void markClean() {
+    tracked.set(true);
+    modifiedDetails.clear();
+  }
+
+  /**
+   * @return True if the project has been loaded or written and changes since then are known. An
+   *         untracked project, such as one built with the no-argument constructor, has to be
+   *         written in full.
+   */
+  public boolean isTracked() {
+    return tracked.get();
+  }
+
+  public boolean isModified() {
+    return !modifiedDetails.isEmpty();
+  }
+
+  public Set<Detail> getModifiedDetails() {
+    return modifiedDetails.isEmpty() ? EnumSet.noneOf(Detail.class) : EnumSet.copyOf(modifiedDetails);
+  }
+
+  /**
+   * Copies the project, its lists and its change tracking. Edit a copy rather than a project that
+   * may be shared, such as one returned from the service's cache.
+   *
+   * @return A copy of the project.
+   */
+  public Project copy() {
+    Project copy = new Project();
+
+    copy.projectId = projectId;
+    copy.projectName = projectName;
+    copy.estimatedHours = estimatedHours;
+    copy.actualHours = actualHours;
+    copy.difficulty = difficulty;
+    copy.notes = notes;
+
+    copy.materials.addAll(materials);
+    copy.steps.addAll(steps);
+    copy.categories.addAll(categories);
+
+    copy.tracked.set(tracked.get());
+    copy.modifiedDetails.addAll(modifiedDetails);
+
+    return copy;
+  }
+
+  /*
+   * A detail is only modified when its value actually changes, so setting the value it already
+   * has costs nothing when the project is written. Decimals are compared by value, so 5 and 5.00
+   * are the same number of hours.
+   */
+  private void markModified(Detail detail, Object oldValue, Object newValue) {
+    boolean same = oldValue instanceof BigDecimal oldDecimal && newValue instanceof BigDecimal newDecimal
+        ? oldDecimal.compareTo(newDecimal) == 0
+        : Objects.equals(oldValue, newValue);
+
+    if(!same) {
+      modifiedDetails.add(detail);
+    }
+  }
+
   @Override
   public String toString() {
     String result = "";
@@ -0,0 +1,16 @@
+package projects.entity;
+
+/**
+ * The position of a project in name order. Project names are unique, the project ID is kept
+ * in the key as a tie breaker so the order stays total whatever the collation. It is used as the keyset cursor when paging through projects: the next page starts with
+ * the first project that sorts after this key.
+ */
+public record ProjectKey(String projectName, Integer projectId) {
+  public static ProjectKey of(Project project) {
+    return new ProjectKey(project.getProjectName(), project.getProjectId());
+  }
+
+  public static ProjectKey of(ProjectSummary summary) {
+    return new ProjectKey(summary.projectName(), summary.projectId());
+  }
+}
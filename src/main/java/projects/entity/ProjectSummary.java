@@ -0,0 +1,18 @@
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * The few columns of a project that a listing shows, read straight from a narrow SELECT. Unlike a
+ * {@link Project} it has no notes and no child lists, so a page of summaries is a fraction of the
+ * size of a page of projects, both in memory and on the wire.
+ *
+ * @param projectId The project ID.
+ * @param projectName The project name.
+ * @param difficulty The difficulty, or null if the summary was read without details.
+ * @param estimatedHours The estimated hours, or null if the summary was read without details.
+ * @param actualHours The actual hours, or null if the summary was read without details.
+ */
+public record ProjectSummary(Integer projectId, String projectName, Integer difficulty,
+    BigDecimal estimatedHours, BigDecimal actualHours) {
+}
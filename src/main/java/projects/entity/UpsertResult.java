@@ -0,0 +1,14 @@
+package projects.entity;
+
+/**
+ * What a bulk upsert did, keyed on project name.
+ *
+ * @param inserted The projects whose name was new.
+ * @param updated The projects that existed with different details and were overwritten.
+ * @param unchanged The projects that existed with the same details, which were not written.
+ */
+public record UpsertResult(int inserted, int updated, int unchanged) {
+  public int total() {
+    return inserted + updated + unchanged;
+  }
+}
@@ -0,0 +1,99 @@
+package projects.importer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import projects.exception.DbException;
+
+/*
+ * Splits CSV text into rows of fields as RFC 4180 describes: fields are separated by commas, may be
+ * quoted, and a quoted field may hold commas, line breaks and quotes written twice. Unquoted fields
+ * are trimmed, and a blank field of either kind is read as null, as a blank answer is in the menu.
+ */
+class CsvRows {
+	private final String text;
+	private int pos;
+	private long line;
+	private long rowLine;
+
+	CsvRows(String text, long firstLine) {
+		this.text = text;
+		this.line = firstLine;
+	}
+
+	// the line the row last returned by next() started on
+	long getRowLine() {
+		return rowLine;
+	}
+
+	// the fields of the next row, or null at the end of the text
+	List<String> next() {
+		if (pos >= text.length()) {
+			return null;
+		}
+
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		rowLine = line;
+
+		while (true) {
+			boolean quoted = false;
+			field.setLength(0);
+
+			if (pos < text.length() && text.charAt(pos) == '"') {
+				quoted = true;
+				pos++;
+
+				while (true) {
+					if (pos >= text.length()) {
+						throw new DbException("Line " + rowLine + ": A quoted field is not closed");
+					}
+
+					char ch = text.charAt(pos++);
+
+					if (ch == '"') {
+						if (pos < text.length() && text.charAt(pos) == '"') {
+							field.append('"');
+							pos++;
+						} else {
+							break;
+						}
+					} else {
+						if (ch == '\n') {
+							line++;
+						}
+
+						field.append(ch);
+					}
+				}
+			}
+
+			// the rest of the field up to the next comma or line break, anything after a closing quote included
+			while (pos < text.length()) {
+				char ch = text.charAt(pos);
+
+				if (ch == ',' || ch == '\n') {
+					break;
+				}
+
+				if (ch != '\r') {
+					field.append(ch);
+				}
+
+				pos++;
+			}
+
+			String value = quoted ? field.toString() : field.toString().strip();
+			fields.add(value.isBlank() ? null : value);
+
+			if (pos >= text.length()) {
+				return fields;
+			}
+
+			if (text.charAt(pos++) == '\n') {
+				line++;
+				return fields;
+			}
+		}
+	}
+}
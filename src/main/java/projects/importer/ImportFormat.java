@@ -0,0 +1,292 @@
+package projects.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+import projects.web.ProjectJson;
+
+/**
+ * The file formats {@link ProjectImporter} reads. Both are line based, so a file can be cut into
+ * chunks at the start of any project without parsing it first.
+ *
+ * <ul>
+ * <li>{@link #CSV}: one row per project, material, step or category, each starting with its kind.
+ * Materials, steps and categories belong to the project row above them:
+ *
+ * <pre>
+ * project,Build a bookshelf,12.50,,3,"Oak, not pine"
+ * material,Oak board,6,24.99
+ * step,Cut the boards to length
+ * category,2
+ * </pre>
+ *
+ * A project row holds the name, estimated hours, actual hours, difficulty and notes, a material
+ * row the name, number required and cost, a step row the text and a category row the category ID.
+ * Fields may be quoted, and a quoted field may hold commas, doubled quotes and line breaks. A
+ * blank field is null, lines starting with # are comments, and steps are numbered in file
+ * order.</li>
+ * <li>{@link #JSON_LINES}: one project per line, as the JSON object the HTTP front end accepts,
+ * materials, steps and categories included.</li>
+ * </ul>
+ *
+ * Text fields go through {@link InputFields}, so numbers are held to the same rules as in the
+ * menu.
+ */
+public enum ImportFormat {
+	CSV {
+		@Override
+		boolean startsProject(ByteBuffer bytes, int lineStart) {
+			for (int index = 0; index < PROJECT_ROW.length; index++) {
+				if (lineStart + index >= bytes.limit() || bytes.get(lineStart + index) != PROJECT_ROW[index]) {
+					return false;
+				}
+			}
+
+			if (lineStart + PROJECT_ROW.length >= bytes.limit()) {
+				return true;
+			}
+
+			byte next = bytes.get(lineStart + PROJECT_ROW.length);
+			return next == ',' || next == '\r' || next == '\n';
+		}
+
+		@Override
+		boolean quotesSpanLines() {
+			return true;
+		}
+
+		@Override
+		List<Project> parse(String text, long firstLine) {
+			List<Project> projects = new ArrayList<>();
+			CsvRows rows = new CsvRows(text, firstLine);
+			Project project = null;
+			long projectLine = 0;
+
+			for (List<String> fields = rows.next(); Objects.nonNull(fields); fields = rows.next()) {
+				long line = rows.getRowLine();
+
+				if (fields.size() == 1 && Objects.isNull(fields.get(0))) {
+					continue;
+				}
+
+				String kind = Objects.isNull(fields.get(0)) ? "" : fields.get(0).toLowerCase(Locale.ROOT);
+
+				if (kind.startsWith("#")) {
+					continue;
+				}
+
+				try {
+					if (kind.equals("project")) {
+						if (Objects.nonNull(project)) {
+							validate(project, projectLine);
+							projects.add(project);
+						}
+
+						project = new Project();
+						projectLine = line;
+
+						expectFields(fields, 6);
+						project.setProjectName(field(fields, 1));
+						project.setEstimatedHours(InputFields.parseDecimal(field(fields, 2)));
+						project.setActualHours(InputFields.parseDecimal(field(fields, 3)));
+						project.setDifficulty(InputFields.parseInteger(field(fields, 4)));
+						project.setNotes(field(fields, 5));
+						continue;
+					}
+
+					if (Objects.isNull(project)) {
+						throw new DbException("A " + kind + " row must follow a project row");
+					}
+
+					switch (kind) {
+					case "material" -> {
+						expectFields(fields, 4);
+
+						Material material = new Material();
+						material.setMaterialName(field(fields, 1));
+						material.setNumRequired(InputFields.parseInteger(field(fields, 2)));
+						material.setCost(InputFields.parseDecimal(field(fields, 3)));
+						project.getMaterials().add(material);
+					}
+					case "step" -> {
+						expectFields(fields, 2);
+
+						Step step = new Step();
+						step.setStepText(field(fields, 1));
+						project.getSteps().add(step);
+					}
+					case "category" -> {
+						expectFields(fields, 2);
+
+						Category category = new Category();
+						category.setCategoryId(InputFields.parseInteger(field(fields, 1)));
+						project.getCategories().add(category);
+					}
+					default -> throw new DbException("Unknown row kind '" + fields.get(0) + "'");
+					}
+				} catch (DbException e) {
+					throw lineError(line, e.getMessage());
+				}
+			}
+
+			if (Objects.nonNull(project)) {
+				validate(project, projectLine);
+				projects.add(project);
+			}
+
+			return projects;
+		}
+	},
+
+	JSON_LINES {
+		@Override
+		boolean startsProject(ByteBuffer bytes, int lineStart) {
+			for (int index = lineStart; index < bytes.limit(); index++) {
+				byte ch = bytes.get(index);
+
+				if (ch == '\n' || ch == '\r') {
+					return false;
+				}
+
+				if (ch != ' ' && ch != '\t') {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		@Override
+		boolean quotesSpanLines() {
+			return false;
+		}
+
+		@Override
+		List<Project> parse(String text, long firstLine) {
+			List<Project> projects = new ArrayList<>();
+			long line = firstLine;
+			int start = 0;
+
+			while (start < text.length()) {
+				int end = text.indexOf('\n', start);
+
+				if (end < 0) {
+					end = text.length();
+				}
+
+				String json = text.substring(start, end).strip();
+
+				if (!json.isEmpty()) {
+					Project project;
+
+					try {
+						project = ProjectJson.parseProject(json);
+					} catch (IllegalArgumentException e) {
+						throw lineError(line, e.getMessage());
+					}
+
+					validate(project, line);
+					projects.add(project);
+				}
+
+				start = end + 1;
+				line++;
+			}
+
+			return projects;
+		}
+	};
+
+	private static final byte[] PROJECT_ROW = "project".getBytes();
+
+	// the length of the name columns
+	private static final int MAX_NAME_LENGTH = 128;
+
+	/**
+	 * @return The format a file's extension stands for: .csv, or .jsonl, .ndjson or .json.
+	 * @throws DbException Thrown if the extension is none of those.
+	 */
+	public static ImportFormat of(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+		if (name.endsWith(".csv")) {
+			return CSV;
+		}
+
+		if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+			return JSON_LINES;
+		}
+
+		throw new DbException("Cannot tell the format of " + file + ", expected a .csv or .jsonl file");
+	}
+
+	// whether the line starting at this offset starts a project, the reader only cuts chunks there
+	abstract boolean startsProject(ByteBuffer bytes, int lineStart);
+
+	// whether a line break inside quotes belongs to a field, so the reader must track quotes to find lines
+	abstract boolean quotesSpanLines();
+
+	/**
+	 * Parses and validates the projects in a chunk of the file.
+	 *
+	 * @param text      Whole lines of the file, starting with a project.
+	 * @param firstLine The line number of the first line, counting from 1.
+	 * @throws DbException Thrown if a line is not valid, with its line number in the message.
+	 */
+	abstract List<Project> parse(String text, long firstLine);
+
+	// checks what the columns require, so a bad row fails with its line number instead of failing its whole chunk in the database
+	private static void validate(Project project, long line) {
+		checkName(project.getProjectName(), "project name", line);
+
+		for (Material material : project.getMaterials()) {
+			checkName(material.getMaterialName(), "material name", line);
+		}
+
+		for (Step step : project.getSteps()) {
+			if (Objects.isNull(step.getStepText()) || step.getStepText().isBlank()) {
+				throw lineError(line, "A step of project '" + project.getProjectName() + "' has no text");
+			}
+		}
+
+		for (Category category : project.getCategories()) {
+			if (Objects.isNull(category.getCategoryId())) {
+				throw lineError(line, "A category of project '" + project.getProjectName() + "' has no category ID");
+			}
+		}
+	}
+
+	private static void checkName(String name, String what, long line) {
+		if (Objects.isNull(name) || name.isBlank()) {
+			throw lineError(line, "A " + what + " is required");
+		}
+
+		if (name.length() > MAX_NAME_LENGTH) {
+			throw lineError(line, "The " + what + " '" + name + "' is longer than " + MAX_NAME_LENGTH + " characters");
+		}
+	}
+
+	private static void expectFields(List<String> fields, int count) {
+		if (fields.size() > count) {
+			throw new DbException("A " + fields.get(0) + " row has at most " + (count - 1) + " fields after the kind");
+		}
+	}
+
+	// a missing trailing field is the same as a blank one
+	private static String field(List<String> fields, int index) {
+		return index < fields.size() ? fields.get(index) : null;
+	}
+
+	private static DbException lineError(long line, String message) {
+		return new DbException("Line " + line + ": " + message);
+	}
+}
@@ -0,0 +1,65 @@
+package projects.importer;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import projects.entity.Amounts;
+import projects.exception.DbException;
+
+/**
+ * The rules for turning typed or imported text into project fields, shared by the menu in
+ * {@code ProjectsApp} and by {@link ProjectImporter} so that a value is accepted or rejected the
+ * same way whichever way it comes in. A null input is a field that was left blank and stays null.
+ */
+public final class InputFields {
+	private InputFields() {
+	}
+
+	/**
+	 * @param input The text, already trimmed, or null if blank.
+	 * @return The whole number, or null if the input is null.
+	 * @throws DbException Thrown if the input is not a whole number.
+	 */
+	public static Integer parseInteger(String input) {
+		if (Objects.isNull(input)) {
+			return null;
+		}
+
+		try {
+			return Integer.valueOf(input);
+		} catch (NumberFormatException e) {
+			throw new DbException(input + " is not a valid number.");
+		}
+	}
+
+	/**
+	 * Hours and costs are kept to two decimal places, as the columns are, so a value with more is
+	 * refused rather than rounded. The size is checked by {@link Amounts#toColumnScale} before
+	 * the value is rescaled, the same check the HTTP front end makes, so an exponent such as
+	 * 1e99999999 is refused at once.
+	 *
+	 * @param input The text, already trimmed, or null if blank.
+	 * @return The number with a scale of two, or null if the input is null.
+	 * @throws DbException Thrown if the input is not a number with at most two decimal places that
+	 *                     fits the column.
+	 */
+	public static BigDecimal parseDecimal(String input) {
+		if (Objects.isNull(input)) {
+			return null;
+		}
+
+		BigDecimal value;
+
+		try {
+			value = new BigDecimal(input);
+		} catch (NumberFormatException e) {
+			throw new DbException(input + " is not a valid decimal number.");
+		}
+
+		try {
+			return Amounts.toColumnScale(value);
+		} catch (ArithmeticException e) {
+			throw new DbException(input + " is not a valid amount, it " + e.getMessage() + ".");
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package projects.importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import projects.dao.ProjectDao;
+import projects.entity.ImportCheckpoint;
+import projects.entity.ImportProgress;
+import projects.entity.Project;
+import projects.exception.DbException;
+
+/**
+ * Imports project graphs from a CSV or JSON lines file (see {@link ImportFormat}) as a three stage
+ * pipeline:
+ *
+ * <ol>
+ * <li>A reader thread maps the file into memory a window at a time and cuts it into chunks of
+ * {@link #getChunkSize()} projects. It only looks for line starts, so it reads the file at about
+ * the speed of memory, and a chunk is a view of the mapping rather than a copy.</li>
+ * <li>A pool of {@link #getParserThreads()} parser threads decodes, parses and validates the
+ * chunks in parallel.</li>
+ * <li>The calling thread writes each chunk with {@link ProjectDao#importProjectGraphs}, as JDBC
+ * batches that the driver sends as multi-row INSERTs, in one transaction per chunk.</li>
+ * </ol>
+ *
+ * The reader hands each chunk's parse to the pool and queues the future in file order, so chunks
+ * are written in the order they appear even though they are parsed out of order. The queue holds
+ * at most {@link #getQueueCapacity()} chunks: when the database is the bottleneck the reader
+ * blocks instead of reading ahead, and memory stays bounded however large the file is.
+ *
+ * Each chunk commits together with a checkpoint of the file offset after it. If an import stops,
+ * from a bad line, a database error or the process being killed, running it again on the same
+ * file resumes after the last chunk that committed, and the projects before it are not written a
+ * second time. The lines before the checkpoint must not change in between. The checkpoint is
+ * removed when the whole file is in.
+ */
+public class ProjectImporter {
+	private static final int DEFAULT_CHUNK_SIZE = 500;
+
+	// the most of the file mapped at once, a single project larger than this can't be imported
+	private static final long MAX_WINDOW_BYTES = 256L << 20;
+
+	// the byte order mark some editors start a UTF-8 file with
+	private static final byte[] UTF8_BOM = { (byte)0xEF, (byte)0xBB, (byte)0xBF };
+
+	// queued by the reader after the last chunk
+	private static final ParsedChunk END = new ParsedChunk(List.of(), -1, -1);
+
+	private final ProjectDao projectDao;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int parserThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	private int queueCapacity = 2 * parserThreads;
+
+	public ProjectImporter(ProjectDao projectDao) {
+		this.projectDao = projectDao;
+	}
+
+	// how many projects are written per transaction and checkpoint
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new DbException("Import chunk size must be at least 1: " + chunkSize);
+		}
+
+		this.chunkSize = chunkSize;
+	}
+
+	public int getParserThreads() {
+		return parserThreads;
+	}
+
+	public void setParserThreads(int parserThreads) {
+		if (parserThreads < 1) {
+			throw new DbException("Import parser threads must be at least 1: " + parserThreads);
+		}
+
+		this.parserThreads = parserThreads;
+	}
+
+	// how many chunks may be read ahead of the one being written
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new DbException("Import queue capacity must be at least 1: " + queueCapacity);
+		}
+
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Imports every project in a file, or the rest of them if an earlier import of the same file
+	 * left a checkpoint.
+	 *
+	 * @param file     The file. Its format is taken from its extension.
+	 * @param listener Told the progress after each chunk commits, on the calling thread.
+	 * @return The progress after the last chunk.
+	 * @throws DbException Thrown if the file can't be read, if a line is not valid or if the
+	 *                     database fails. Chunks before the failing one stay committed, and the
+	 *                     next import of the file resumes after them.
+	 */
+	public ImportProgress importProjects(Path file, Consumer<ImportProgress> listener) {
+		Path path = file.toAbsolutePath().normalize();
+		String source = path.toString();
+		ImportFormat format = ImportFormat.of(path);
+		long startNanos = System.nanoTime();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ImportCheckpoint checkpoint = projectDao.fetchImportCheckpoint(source)
+					.orElseGet(() -> new ImportCheckpoint(source, 0, 1, 0));
+
+			checkResumable(channel, checkpoint, size);
+
+			ImportProgress progress = new ImportProgress(checkpoint.byteOffset(), size, 0, 0, 0, Duration.ZERO);
+			BlockingQueue<Future<ParsedChunk>> chunks = new ArrayBlockingQueue<>(queueCapacity);
+			ExecutorService parsers = Executors.newFixedThreadPool(parserThreads,
+					Thread.ofPlatform().name("project-import-parser-", 1).daemon().factory());
+			ImportCheckpoint start = checkpoint;
+			Thread reader = Thread.ofPlatform().name("project-import-reader").daemon()
+					.start(() -> readChunks(channel, format, start, size, parsers, chunks));
+
+			try {
+				long projects = 0;
+				long materials = 0;
+				long steps = 0;
+
+				for (ParsedChunk chunk = await(chunks.take()); chunk != END; chunk = await(chunks.take())) {
+					checkpoint = new ImportCheckpoint(source, chunk.endOffset(), chunk.endLine(),
+							checkpoint.projectsImported() + chunk.projects().size());
+
+					projectDao.importProjectGraphs(chunk.projects(), checkpoint);
+
+					for (Project project : chunk.projects()) {
+						materials += project.getMaterials().size();
+						steps += project.getSteps().size();
+					}
+
+					projects += chunk.projects().size();
+					progress = new ImportProgress(chunk.endOffset(), size, projects, materials, steps,
+							Duration.ofNanos(System.nanoTime() - startNanos));
+					listener.accept(progress);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DbException("Import of " + source + " was interrupted", e);
+			} finally {
+				// a failed write leaves the reader blocked on a full queue and the parsers mid chunk
+				reader.interrupt();
+				parsers.shutdownNow();
+				joinQuietly(reader);
+			}
+
+			projectDao.deleteImportCheckpoint(source);
+			return progress;
+		} catch (IOException e) {
+			throw new DbException("Cannot read " + source, e);
+		}
+	}
+
+	// forgets where an import of the file stopped, so the next import starts again from the top
+	public boolean discardCheckpoint(Path file) {
+		return projectDao.deleteImportCheckpoint(file.toAbsolutePath().normalize().toString());
+	}
+
+	// a checkpoint that doesn't fall on a line start of this file must be for a different file
+	private void checkResumable(FileChannel channel, ImportCheckpoint checkpoint, long size) throws IOException {
+		long offset = checkpoint.byteOffset();
+
+		if (offset == 0) {
+			return;
+		}
+
+		ByteBuffer previous = ByteBuffer.allocate(1);
+
+		if (offset > size || channel.read(previous, offset - 1) != 1 || previous.get(0) != '\n') {
+			throw new DbException("The import checkpoint for " + checkpoint.source() + " at byte " + offset
+					+ " does not match the file. Discard the checkpoint to import the file from the start.");
+		}
+	}
+
+	/*
+	 * The reader thread. Scans each mapped window for line starts, tracking quotes for CSV, and
+	 * cuts a chunk before the project that would make it one too many. A chunk never spans two
+	 * windows: the next window is mapped from the start of the last project that didn't fit, so
+	 * it is read again whole.
+	 */
+	private void readChunks(FileChannel channel, ImportFormat format, ImportCheckpoint start, long size,
+			ExecutorService parsers, BlockingQueue<Future<ParsedChunk>> chunks) {
+		try {
+			long offset = start.byteOffset();
+			long line = start.lineNumber();
+
+			while (offset < size) {
+				long windowSize = Math.min(MAX_WINDOW_BYTES, size - offset);
+				boolean lastWindow = offset + windowSize == size;
+				MappedByteBuffer window = channel.map(MapMode.READ_ONLY, offset, windowSize);
+
+				int chunkStart = offset == 0 && startsWith(window, UTF8_BOM) ? UTF8_BOM.length : 0;
+				long chunkLine = line;
+				int projectCount = 0;
+				int lastProjectStart = -1;
+				long lastProjectLine = line;
+				boolean inQuotes = false;
+				boolean lineStart = true;
+				boolean fieldStart = true;
+
+				for (int pos = chunkStart; pos < window.limit(); pos++) {
+					if (lineStart && format.startsProject(window, pos)) {
+						if (projectCount == chunkSize) {
+							submit(format, window, chunkStart, pos, offset, chunkLine, line, parsers, chunks);
+							chunkStart = pos;
+							chunkLine = line;
+							projectCount = 0;
+						}
+
+						projectCount++;
+						lastProjectStart = pos;
+						lastProjectLine = line;
+					}
+
+					byte ch = window.get(pos);
+
+					// the same quoting rules as CsvRows: a quote opens only at the start of a field, and is doubled inside one
+					if (ch == '"' && format.quotesSpanLines()) {
+						if (!inQuotes) {
+							inQuotes = fieldStart;
+						} else if (pos + 1 < window.limit() && window.get(pos + 1) == '"') {
+							pos++;
+						} else {
+							inQuotes = false;
+						}
+					} else if (ch == '\n') {
+						line++;
+					}
+
+					lineStart = ch == '\n' && !inQuotes;
+					fieldStart = (ch == ',' || ch == '\n') && !inQuotes;
+				}
+
+				if (lastWindow) {
+					if (chunkStart < window.limit()) {
+						submit(format, window, chunkStart, window.limit(), offset, chunkLine, line, parsers, chunks);
+					}
+
+					break;
+				}
+
+				// the last project may go on past the window, so it is left for the next one
+				if (lastProjectStart > chunkStart) {
+					submit(format, window, chunkStart, lastProjectStart, offset, chunkLine, lastProjectLine, parsers,
+							chunks);
+					offset += lastProjectStart;
+					line = lastProjectLine;
+				} else if (chunkStart > 0) {
+					offset += chunkStart;
+					line = chunkLine;
+				} else {
+					throw new DbException("The project at line " + chunkLine + " is larger than "
+							+ (MAX_WINDOW_BYTES >> 20) + "MB");
+				}
+			}
+
+			chunks.put(CompletableFuture.completedFuture(END));
+		} catch (InterruptedException e) {
+			// the writer stopped, nobody is waiting for the rest
+		} catch (IOException | RuntimeException e) {
+			// queued after the chunks read so far, so they are still written before the import fails
+			try {
+				chunks.put(CompletableFuture.failedFuture(e));
+			} catch (InterruptedException interrupted) {
+				// the writer stopped
+			}
+		}
+	}
+
+	private void submit(ImportFormat format, MappedByteBuffer window, int from, int to, long windowOffset,
+			long firstLine, long endLine, ExecutorService parsers, BlockingQueue<Future<ParsedChunk>> chunks)
+			throws InterruptedException {
+		ByteBuffer bytes = window.slice(from, to - from);
+		long endOffset = windowOffset + to;
+
+		chunks.put(parsers.submit(() -> new ParsedChunk(
+				format.parse(StandardCharsets.UTF_8.decode(bytes).toString(), firstLine), endOffset, endLine)));
+	}
+
+	private static boolean startsWith(ByteBuffer bytes, byte[] prefix) {
+		if (bytes.limit() < prefix.length) {
+			return false;
+		}
+
+		for (int index = 0; index < prefix.length; index++) {
+			if (bytes.get(index) != prefix[index]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static ParsedChunk await(Future<ParsedChunk> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof DbException dbException) {
+				throw dbException;
+			}
+
+			throw new DbException(cause);
+		}
+	}
+
+	private static void joinQuietly(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// the projects of one chunk and where the file stands once they are in
+	private record ParsedChunk(List<Project> projects, long endOffset, long endLine) {
+		ParsedChunk {
+			Objects.requireNonNull(projects);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package projects.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A condition on the categories a project is in, answered by a {@link CategoryIndex}. Filters are
+ * built from single categories and combined, for example projects in categories 1 and 2 but not 3:
+ *
+ * <pre>
+ * CategoryFilter.allOf(1, 2).and(CategoryFilter.category(3).not())
+ * </pre>
+ */
+public sealed interface CategoryFilter {
+	record InCategory(int categoryId) implements CategoryFilter {
+	}
+
+	record And(List<CategoryFilter> filters) implements CategoryFilter {
+		public And {
+			filters = List.copyOf(filters);
+		}
+	}
+
+	record Or(List<CategoryFilter> filters) implements CategoryFilter {
+		public Or {
+			filters = List.copyOf(filters);
+		}
+	}
+
+	record Not(CategoryFilter filter) implements CategoryFilter {
+	}
+
+	static CategoryFilter category(int categoryId) {
+		return new InCategory(categoryId);
+	}
+
+	// in every one of the categories, or every project if none are given
+	static CategoryFilter allOf(int... categoryIds) {
+		return new And(Arrays.stream(categoryIds).mapToObj(CategoryFilter::category).toList());
+	}
+
+	// in at least one of the categories, or no project if none are given
+	static CategoryFilter anyOf(int... categoryIds) {
+		return new Or(Arrays.stream(categoryIds).mapToObj(CategoryFilter::category).toList());
+	}
+
+	default CategoryFilter and(CategoryFilter other) {
+		return new And(List.of(this, other));
+	}
+
+	default CategoryFilter or(CategoryFilter other) {
+		return new Or(List.of(this, other));
+	}
+
+	default CategoryFilter not() {
+		return new Not(this);
+	}
+}
@@ -0,0 +1,269 @@
+package projects.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import projects.dao.ProjectChangeListener;
+import projects.dao.ProjectDao;
+import projects.entity.Category;
+import projects.entity.Project;
+
+/**
+ * An in-memory index of which projects are in which categories, kept as one bitmap of project
+ * IDs per category plus one of every project. Project IDs come from AUTO_INCREMENT and are dense,
+ * so a plain {@link BitSet} holds a million projects in about 125KB per category. A
+ * {@link CategoryFilter} is answered with word-at-a-time AND, OR and AND NOT over those bitmaps,
+ * which is far cheaper than the joins and NOT EXISTS subqueries the same question costs in SQL.
+ *
+ * Like {@link ProjectSearchIndex}, the index is read from the database on first use, then kept
+ * current through {@link ProjectChangeListener} events, and it must be registered with
+ * {@link ProjectDao#addChangeListener(ProjectChangeListener)}. It is loaded the same way too: the
+ * bitmaps are read without holding the lock and swapped in, and the events that arrived meanwhile
+ * are replayed on them. Changes made outside this process are only picked up by
+ * {@link #rebuild()}.
+ */
+public class CategoryIndex implements ProjectChangeListener {
+	private final ProjectDao projectDao;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Lock loadLock = new ReentrantLock();
+
+	// guarded by the lock, replaced when a load finishes
+	private BitSet allProjects = new BitSet();
+	private Map<Integer, BitSet> projectsByCategory = new HashMap<>();
+
+	// see ProjectSearchIndex, the events that arrived while a load was reading
+	private List<Runnable> pending;
+
+	private volatile boolean loaded;
+
+	public CategoryIndex(ProjectDao projectDao) {
+		this.projectDao = projectDao;
+	}
+
+	/**
+	 * @param filter The condition on categories.
+	 * @return The number of projects that meet it.
+	 */
+	public int count(CategoryFilter filter) {
+		return read(() -> evaluate(filter).cardinality());
+	}
+
+	/**
+	 * Lists the projects that meet a filter in ID order, a page at a time. Pass the last ID of one
+	 * page as the after ID of the next; each page starts where the last one stopped, so reading
+	 * deep pages costs no more than the first.
+	 *
+	 * @param filter  The condition on categories.
+	 * @param afterId The project ID to start after, or null to start from the beginning.
+	 * @param limit   The most IDs to return; a limit below one returns an empty list.
+	 * @return The IDs of matching projects, in ascending order.
+	 */
+	public List<Integer> projectIds(CategoryFilter filter, Integer afterId, int limit) {
+		// no project ID follows Integer.MAX_VALUE, and afterId + 1 would wrap around to negative
+		if (limit < 1 || Objects.equals(afterId, Integer.MAX_VALUE)) {
+			return List.of();
+		}
+
+		return read(() -> {
+			BitSet matches = evaluate(filter);
+			List<Integer> projectIds = new ArrayList<>(Math.min(limit, matches.cardinality()));
+			int projectId = matches.nextSetBit(Objects.isNull(afterId) ? 0 : Math.max(0, afterId + 1));
+
+			while (projectId >= 0 && projectIds.size() < limit) {
+				projectIds.add(projectId);
+				projectId = matches.nextSetBit(projectId + 1);
+			}
+
+			return projectIds;
+		});
+	}
+
+	// the number of projects in each category that has any, by category ID
+	public Map<Integer, Integer> countsByCategory() {
+		return read(() -> {
+			Map<Integer, Integer> counts = new TreeMap<>();
+
+			projectsByCategory.forEach((categoryId, projects) -> {
+				if (!projects.isEmpty()) {
+					counts.put(categoryId, projects.cardinality());
+				}
+			});
+
+			return counts;
+		});
+	}
+
+	// called with the read lock held, always returns a new bitmap the caller may change
+	private BitSet evaluate(CategoryFilter filter) {
+		return switch (filter) {
+		case CategoryFilter.InCategory in -> {
+			BitSet projects = projectsByCategory.get(in.categoryId());
+			yield Objects.isNull(projects) ? new BitSet() : (BitSet)projects.clone();
+		}
+		case CategoryFilter.And and -> {
+			BitSet result = (BitSet)allProjects.clone();
+
+			for (CategoryFilter each : and.filters()) {
+				if (result.isEmpty()) {
+					break;
+				}
+
+				// a NOT is applied as AND NOT, without building the complement first
+				if (each instanceof CategoryFilter.Not not) {
+					result.andNot(evaluate(not.filter()));
+				} else {
+					result.and(evaluate(each));
+				}
+			}
+
+			yield result;
+		}
+		case CategoryFilter.Or or -> {
+			BitSet result = new BitSet();
+
+			for (CategoryFilter each : or.filters()) {
+				result.or(evaluate(each));
+			}
+
+			yield result;
+		}
+		case CategoryFilter.Not not -> {
+			BitSet result = (BitSet)allProjects.clone();
+			result.andNot(evaluate(not.filter()));
+			yield result;
+		}
+		};
+	}
+
+	private <T> T read(Supplier<T> query) {
+		ensureLoaded();
+
+		lock.readLock().lock();
+
+		try {
+			return query.get();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void ensureLoaded() {
+		if (!loaded) {
+			loadLock.lock();
+
+			try {
+				if (!loaded) {
+					load();
+				}
+			} finally {
+				loadLock.unlock();
+			}
+		}
+	}
+
+	// reloads the bitmaps from the database, queries and change events carry on meanwhile
+	public void rebuild() {
+		loadLock.lock();
+
+		try {
+			load();
+		} finally {
+			loadLock.unlock();
+		}
+	}
+
+	// called with the load lock held, as ProjectSearchIndex.load the write lock is only held to start the queue and swap
+	private void load() {
+		setPending(new ArrayList<>());
+
+		BitSet freshAll = new BitSet();
+		Map<Integer, BitSet> freshByCategory = new HashMap<>();
+
+		try {
+			projectDao.forEachProjectCategory((projectId, categoryId) -> {
+				freshAll.set(projectId);
+
+				if (Objects.nonNull(categoryId)) {
+					freshByCategory.computeIfAbsent(categoryId, key -> new BitSet()).set(projectId);
+				}
+			});
+		} catch (RuntimeException e) {
+			setPending(null);
+			throw e;
+		}
+
+		lock.writeLock().lock();
+
+		try {
+			allProjects = freshAll;
+			projectsByCategory = freshByCategory;
+			pending.forEach(Runnable::run);
+			pending = null;
+			loaded = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void setPending(List<Runnable> queue) {
+		lock.writeLock().lock();
+
+		try {
+			pending = queue;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void projectsInserted(List<Project> projects) {
+		apply(() -> {
+			for (Project project : projects) {
+				allProjects.set(project.getProjectId());
+
+				for (Category category : project.getCategories()) {
+					projectsByCategory.computeIfAbsent(category.getCategoryId(), key -> new BitSet())
+							.set(project.getProjectId());
+				}
+			}
+		});
+	}
+
+	@Override
+	public void projectsDeleted(Collection<Integer> projectIds) {
+		apply(() -> {
+			for (Integer projectId : projectIds) {
+				allProjects.clear(projectId);
+				projectsByCategory.values().forEach(projects -> projects.clear(projectId));
+			}
+		});
+	}
+
+	// see ProjectSearchIndex.apply, a change before the first load is read by the load itself
+	private void apply(Runnable change) {
+		lock.writeLock().lock();
+
+		try {
+			if (loaded) {
+				change.run();
+			}
+
+			if (Objects.nonNull(pending)) {
+				pending.add(change);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
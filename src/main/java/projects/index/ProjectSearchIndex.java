@@ -0,0 +1,416 @@
+package projects.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import projects.dao.ProjectChangeListener;
+import projects.dao.ProjectDao;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+
+/**
+ * An in-memory inverted index over the words of each project's name and notes, its step text and
+ * its material names. A search never reaches MySQL, where the same question would be a LIKE
+ * '%word%' scan of three tables.
+ *
+ * Text is split into lower-case words of letters and digits. Every word of the query must appear
+ * somewhere in a project for it to match. Matches are ranked by TF-IDF: each word scores its count
+ * in the project, weighted by where it was found (the name counts three times, a material name
+ * twice, notes and steps once), times log(1 + projects / projects with the word), so rare words
+ * count for more than common ones.
+ *
+ * The index is loaded from the database on first use and then kept current through
+ * {@link ProjectChangeListener} events, so it must be registered with
+ * {@link ProjectDao#addChangeListener(ProjectChangeListener)} before it is used. A load reads the
+ * database into a fresh set of maps without holding the lock, so writes and their events carry on
+ * while it runs; the events that arrive meanwhile are queued, and once the read is done the new
+ * maps are swapped in and the queue replayed on them under a short write lock. During a rebuild
+ * searches keep using the old maps, which events keep current as before. Every event replaces a
+ * project's words outright, or adds a step tracked by ID, so an event for a change the load has
+ * already read is not counted twice. Changes made outside this process are only picked up by
+ * {@link #rebuild()}.
+ */
+public class ProjectSearchIndex implements ProjectChangeListener {
+	private static final int NAME_WEIGHT = 3;
+	private static final int MATERIAL_WEIGHT = 2;
+	private static final int TEXT_WEIGHT = 1;
+	private static final int LOAD_PAGE_SIZE = 500;
+
+	private final ProjectDao projectDao;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// one load at a time, it is never taken by searches or events
+	private final Lock loadLock = new ReentrantLock();
+
+	// guarded by the lock, replaced as a whole when a load finishes
+	private Contents contents = new Contents();
+
+	// the events that arrived while a load was reading, null when no load is running, guarded by the lock
+	private List<Runnable> pending;
+
+	private volatile boolean loaded;
+
+	public ProjectSearchIndex(ProjectDao projectDao) {
+		this.projectDao = projectDao;
+	}
+
+	/**
+	 * Finds the projects that contain every word of the query.
+	 *
+	 * @param query The words to look for. Case and punctuation are ignored.
+	 * @param limit The most project IDs to return.
+	 * @return The matching project IDs, best match first. Ties go to the lower ID. Empty if the
+	 *         query has no words.
+	 */
+	public List<Integer> search(String query, int limit) {
+		ensureLoaded();
+
+		Set<String> words = new LinkedHashSet<>(tokenize(query));
+
+		if (words.isEmpty() || limit < 1) {
+			return List.of();
+		}
+
+		lock.readLock().lock();
+
+		try {
+			List<Map<Integer, Integer>> lists = new ArrayList<>(words.size());
+
+			for (String word : words) {
+				Map<Integer, Integer> list = contents.postings.get(word);
+
+				if (Objects.isNull(list)) {
+					return List.of();
+				}
+
+				lists.add(list);
+			}
+
+			// the rarest word has the fewest candidates to check against the others
+			lists.sort(Comparator.comparingInt(Map::size));
+
+			int projectCount = contents.detailWords.size();
+			double[] idf = new double[lists.size()];
+
+			for (int index = 0; index < idf.length; index++) {
+				idf[index] = Math.log(1 + (double)projectCount / lists.get(index).size());
+			}
+
+			// the worst of the best so far is at the head, so it is the one pushed out
+			Comparator<Hit> ranking = Comparator.comparingDouble(Hit::score).thenComparing(Hit::projectId,
+					Comparator.reverseOrder());
+			PriorityQueue<Hit> best = new PriorityQueue<>(ranking);
+
+			candidates: for (Map.Entry<Integer, Integer> candidate : lists.get(0).entrySet()) {
+				Integer projectId = candidate.getKey();
+				double score = candidate.getValue() * idf[0];
+
+				for (int index = 1; index < lists.size(); index++) {
+					Integer count = lists.get(index).get(projectId);
+
+					if (Objects.isNull(count)) {
+						continue candidates;
+					}
+
+					score += count * idf[index];
+				}
+
+				best.add(new Hit(projectId, score));
+
+				if (best.size() > limit) {
+					best.poll();
+				}
+			}
+
+			List<Integer> projectIds = new ArrayList<>(best.size());
+
+			while (!best.isEmpty()) {
+				projectIds.add(best.poll().projectId());
+			}
+
+			return projectIds.reversed();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private record Hit(Integer projectId, double score) {
+	}
+
+	public int getProjectCount() {
+		ensureLoaded();
+
+		lock.readLock().lock();
+
+		try {
+			return contents.detailWords.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getWordCount() {
+		ensureLoaded();
+
+		lock.readLock().lock();
+
+		try {
+			return contents.postings.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void ensureLoaded() {
+		if (!loaded) {
+			loadLock.lock();
+
+			try {
+				if (!loaded) {
+					load();
+				}
+			} finally {
+				loadLock.unlock();
+			}
+		}
+	}
+
+	// reloads every project from the database, searches and change events carry on meanwhile
+	public void rebuild() {
+		loadLock.lock();
+
+		try {
+			load();
+		} finally {
+			loadLock.unlock();
+		}
+	}
+
+	// called with the load lock held, the write lock is only taken to start the queue and to swap
+	private void load() {
+		setPending(new ArrayList<>());
+
+		Contents fresh = new Contents();
+
+		try {
+			projectDao.forEachProjectGraphPage(LOAD_PAGE_SIZE, projects -> projects.forEach(fresh::indexProject));
+		} catch (RuntimeException e) {
+			setPending(null);
+			throw e;
+		}
+
+		lock.writeLock().lock();
+
+		try {
+			contents = fresh;
+			pending.forEach(Runnable::run);
+			pending = null;
+			loaded = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void setPending(List<Runnable> queue) {
+		lock.writeLock().lock();
+
+		try {
+			pending = queue;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void projectsInserted(List<Project> projects) {
+		apply(() -> projects.forEach(contents::indexProject));
+	}
+
+	@Override
+	public void projectDetailsChanged(List<Project> projects) {
+		apply(() -> {
+			for (Project project : projects) {
+				contents.replace(contents.detailWords, project.getProjectId(), detailWordsOf(project));
+			}
+		});
+	}
+
+	@Override
+	public void stepsAdded(List<Step> steps) {
+		apply(() -> steps.forEach(contents::addStep));
+	}
+
+	@Override
+	public void projectsDeleted(Collection<Integer> projectIds) {
+		apply(() -> projectIds.forEach(contents::remove));
+	}
+
+	/*
+	 * Before the first load there is nothing to update, the load reads the change from the
+	 * database. While a load is reading, the change is also queued and replayed on the loaded maps,
+	 * it reads the contents field when it runs so the replay lands on the new ones.
+	 */
+	private void apply(Runnable change) {
+		lock.writeLock().lock();
+
+		try {
+			if (loaded) {
+				change.run();
+			}
+
+			if (Objects.nonNull(pending)) {
+				pending.add(change);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static Map<String, Integer> detailWordsOf(Project project) {
+		Map<String, Integer> words = new HashMap<>();
+
+		count(words, project.getProjectName(), NAME_WEIGHT);
+		count(words, project.getNotes(), TEXT_WEIGHT);
+
+		return words;
+	}
+
+	private static void count(Map<String, Integer> words, String text, int weight) {
+		for (String word : tokenize(text)) {
+			words.merge(word, weight, Integer::sum);
+		}
+	}
+
+	/*
+	 * The maps of one load, swapped in whole when the load finishes. Only used with the write lock
+	 * held, or by the load that is filling them before anyone else can see them.
+	 */
+	private static final class Contents {
+		// word -> project ID -> weighted count of the word in the project
+		private final Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+
+		/*
+		 * The weighted words of each project, kept so they can be taken out of the postings again.
+		 * The detail words (name and notes) are kept apart from the child words (steps and
+		 * materials) because a details change replaces only the former.
+		 */
+		private final Map<Integer, Map<String, Integer>> detailWords = new HashMap<>();
+		private final Map<Integer, Map<String, Integer>> childWords = new HashMap<>();
+
+		/*
+		 * The IDs of the steps whose words are in childWords. A step committed while a load is
+		 * reading can be read by the load and then arrive again in its stepsAdded event, and must
+		 * only be counted once.
+		 */
+		private final Map<Integer, Set<Integer>> indexedSteps = new HashMap<>();
+
+		private void indexProject(Project project) {
+			Map<String, Integer> children = new HashMap<>();
+			Set<Integer> stepIds = new HashSet<>();
+
+			for (Step step : project.getSteps()) {
+				count(children, step.getStepText(), TEXT_WEIGHT);
+
+				if (Objects.nonNull(step.getStepId())) {
+					stepIds.add(step.getStepId());
+				}
+			}
+
+			for (Material material : project.getMaterials()) {
+				count(children, material.getMaterialName(), MATERIAL_WEIGHT);
+			}
+
+			replace(detailWords, project.getProjectId(), detailWordsOf(project));
+			replace(childWords, project.getProjectId(), children);
+			indexedSteps.put(project.getProjectId(), stepIds);
+		}
+
+		// the project's other child words stay, only the new step's words are added to them
+		private void addStep(Step step) {
+			if (Objects.nonNull(step.getStepId())
+					&& !indexedSteps.computeIfAbsent(step.getProjectId(), key -> new HashSet<>()).add(step.getStepId())) {
+				return;
+			}
+
+			Map<String, Integer> words = new HashMap<>();
+			count(words, step.getStepText(), TEXT_WEIGHT);
+
+			Map<String, Integer> children = childWords.computeIfAbsent(step.getProjectId(), key -> new HashMap<>());
+
+			words.forEach((word, count) -> {
+				children.merge(word, count, Integer::sum);
+				post(word, step.getProjectId(), count);
+			});
+		}
+
+		private void remove(Integer projectId) {
+			replace(detailWords, projectId, null);
+			replace(childWords, projectId, null);
+			indexedSteps.remove(projectId);
+		}
+
+		// swaps one of a project's word sets, taking the old words out of the postings and putting the new ones in
+		private void replace(Map<Integer, Map<String, Integer>> wordSets, Integer projectId,
+				Map<String, Integer> words) {
+			Map<String, Integer> old = Objects.isNull(words) ? wordSets.remove(projectId) : wordSets.put(projectId, words);
+
+			if (Objects.nonNull(old)) {
+				old.forEach((word, count) -> post(word, projectId, -count));
+			}
+
+			if (Objects.nonNull(words)) {
+				words.forEach((word, count) -> post(word, projectId, count));
+			}
+		}
+
+		private void post(String word, Integer projectId, int delta) {
+			Map<Integer, Integer> list = postings.computeIfAbsent(word, key -> new HashMap<>());
+
+			if (list.merge(projectId, delta, Integer::sum) == 0) {
+				list.remove(projectId);
+
+				if (list.isEmpty()) {
+					postings.remove(word);
+				}
+			}
+		}
+	}
+
+	static List<String> tokenize(String text) {
+		List<String> words = new ArrayList<>();
+
+		if (Objects.isNull(text)) {
+			return words;
+		}
+
+		int start = -1;
+
+		for (int index = 0; index <= text.length(); index++) {
+			boolean wordChar = index < text.length() && Character.isLetterOrDigit(text.charAt(index));
+
+			if (wordChar && start < 0) {
+				start = index;
+			} else if (!wordChar && start >= 0) {
+				words.add(text.substring(start, index).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+
+		return words;
+	}
+}
@@ -0,0 +1,120 @@
+package projects.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, cheap enough to record on every call. Values
+ * go into log-linear buckets: each power of two is split into eight buckets, so any percentile is
+ * reported to within 12.5% of the true value, from single nanoseconds up to centuries, in a fixed
+ * 488 counters. Recording is one bit count, one atomic increment and a couple of adders; there are
+ * no locks and no allocation.
+ *
+ * Percentiles are read from the counters as they stand, so a reading taken while other threads
+ * record can be off by the handful of values recorded during the read.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		totalNanos.add(value);
+
+		// a plain read first, the compare-and-set only happens when there is a new maximum
+		if (value > maxNanos.get()) {
+			maxNanos.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	// the largest value that falls in the bucket
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getMeanNanos() {
+		long total = getCount();
+		return total == 0 ? 0 : getTotalNanos() / total;
+	}
+
+	/**
+	 * @param percentile A percentile from 0 to 100, for example 99 or 99.9.
+	 * @return The value that the given percentage of recordings were at or below, or 0 if nothing
+	 *         has been recorded.
+	 */
+	public long getPercentileNanos(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			snapshot[bucket] = counts.get(bucket);
+			total += snapshot[bucket];
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long)Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += snapshot[bucket];
+
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(bucket), getMaxNanos());
+			}
+		}
+
+		return getMaxNanos();
+	}
+
+	// p50/p95/p99/max in microseconds, as used in the text report
+	@Override
+	public String toString() {
+		return String.format("count=%d p50=%.1fus p95=%.1fus p99=%.1fus max=%.1fus", getCount(),
+				getPercentileNanos(50) / 1_000.0, getPercentileNanos(95) / 1_000.0, getPercentileNanos(99) / 1_000.0,
+				getMaxNanos() / 1_000.0);
+	}
+}
@@ -0,0 +1,124 @@
+package projects.metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The registry for the application's metrics. Operations are registered by name the first time
+ * they are asked for and each is published as a JMX MBean under
+ * {@code projects:type=Operation,name=<name>}, so they can be watched live with JConsole or
+ * VisualVM. Other components add their own MBeans through {@link #register(String, Object)} and a
+ * section to the text report through {@link #addReportSection(Supplier)}.
+ *
+ * The text report of every operation and section can be printed on an interval with
+ * {@link #startReporting(Duration, PrintStream)}.
+ */
+public final class Metrics {
+	private static final String DOMAIN = "projects";
+
+	private static final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+	private static final List<Supplier<String>> reportSections = new CopyOnWriteArrayList<>();
+	private static ScheduledExecutorService reporter;
+
+	private Metrics() {
+	}
+
+	public static OperationMetrics operation(String name) {
+		return operations.computeIfAbsent(name, key -> {
+			OperationMetrics metrics = new OperationMetrics(key);
+			register("type=Operation,name=" + key, metrics);
+			return metrics;
+		});
+	}
+
+	/**
+	 * Publishes an MBean in the projects domain, replacing one already registered under the same
+	 * name. Metrics must never break the application, so a failure is reported and otherwise
+	 * ignored.
+	 *
+	 * @param keyProperties The key properties of the object name, for example "type=Database".
+	 * @param mbean The MBean.
+	 */
+	public static void register(String keyProperties, Object mbean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DOMAIN + ":" + keyProperties);
+
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+
+			server.registerMBean(mbean, name);
+		} catch (JMException | RuntimeException e) {
+			System.err.println("Unable to register MBean " + keyProperties + ": " + e);
+		}
+	}
+
+	public static void addReportSection(Supplier<String> section) {
+		reportSections.add(section);
+	}
+
+	public static String report() {
+		StringBuilder builder = new StringBuilder("Metrics at ").append(LocalDateTime.now().withNano(0));
+
+		for (OperationMetrics metrics : new TreeMap<>(operations).values()) {
+			if (metrics.getCount() > 0) {
+				builder.append("\n  ").append(metrics);
+			}
+		}
+
+		for (Supplier<String> section : reportSections) {
+			builder.append("\n  ").append(section.get());
+		}
+
+		return builder.toString();
+	}
+
+	// prints the report on the given interval, at least a millisecond, until stopReporting is called
+	public static synchronized void startReporting(Duration interval, PrintStream out) {
+		if (interval.toMillis() < 1) {
+			throw new IllegalArgumentException("The metrics report interval must be at least a millisecond: " + interval);
+		}
+
+		stopReporting();
+
+		reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "projects-metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long millis = interval.toMillis();
+		reporter.scheduleAtFixedRate(() -> {
+			try {
+				out.println(report());
+			} catch (RuntimeException e) {
+				// an exception would cancel the schedule, skip this report and try again next time
+				out.println("Metrics report failed: " + e);
+			}
+		}, millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+	public static synchronized void stopReporting() {
+		if (Objects.nonNull(reporter)) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+	}
+}
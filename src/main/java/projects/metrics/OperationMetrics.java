@@ -0,0 +1,88 @@
+package projects.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The latency histogram and error count for one operation, such as a DAO or service method. Get
+ * one from {@link Metrics#operation(String)} and keep it in a static field, then wrap the body of
+ * the operation in {@link #time(Supplier)} or {@link #run(Runnable)}. A call that throws is timed
+ * like any other and also counted as an error.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+	private final String name;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder errors = new LongAdder();
+
+	OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	public <T> T time(Supplier<T> operation) {
+		long start = System.nanoTime();
+
+		try {
+			return operation.get();
+		} catch (RuntimeException | Error e) {
+			errors.increment();
+			throw e;
+		} finally {
+			latency.record(System.nanoTime() - start);
+		}
+	}
+
+	public void run(Runnable operation) {
+		time(() -> {
+			operation.run();
+			return null;
+		});
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		return latency.getMeanNanos() / 1_000.0;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return latency.getPercentileNanos(50) / 1_000.0;
+	}
+
+	@Override
+	public double getP95Micros() {
+		return latency.getPercentileNanos(95) / 1_000.0;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return latency.getPercentileNanos(99) / 1_000.0;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return latency.getMaxNanos() / 1_000.0;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + latency + " errors=" + getErrors();
+	}
+}
@@ -0,0 +1,20 @@
+package projects.metrics;
+
+/**
+ * The JMX view of one {@link OperationMetrics}. Latencies are in microseconds.
+ */
+public interface OperationMetricsMBean {
+	long getCount();
+
+	long getErrors();
+
+	double getMeanMicros();
+
+	double getP50Micros();
+
+	double getP95Micros();
+
+	double getP99Micros();
+
+	double getMaxMicros();
+}
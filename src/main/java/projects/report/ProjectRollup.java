@@ -0,0 +1,34 @@
+package projects.report;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The reporting figures of one project, as kept by {@link ProjectRollups}.
+ *
+ * @param projectId The project ID.
+ * @param projectName The project name.
+ * @param difficulty The difficulty, or null if not set.
+ * @param estimatedHours The estimated hours, or null if not set.
+ * @param actualHours The actual hours, or null if not set.
+ * @param materialCost The sum of num_required * cost over the project's materials. A material
+ *          missing either value adds nothing.
+ * @param materialCount The number of materials.
+ * @param categoryIds The IDs of the project's categories.
+ */
+public record ProjectRollup(Integer projectId, String projectName, Integer difficulty, BigDecimal estimatedHours,
+		BigDecimal actualHours, BigDecimal materialCost, int materialCount, List<Integer> categoryIds) {
+	public ProjectRollup {
+		categoryIds = List.copyOf(categoryIds);
+	}
+
+	/**
+	 * @return The actual hours less the estimated hours, positive when the project went over its
+	 *         estimate, or null unless both are set.
+	 */
+	public BigDecimal hoursVariance() {
+		return Objects.isNull(estimatedHours) || Objects.isNull(actualHours) ? null
+				: actualHours.subtract(estimatedHours);
+	}
+}
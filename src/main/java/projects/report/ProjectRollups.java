@@ -0,0 +1,536 @@
+package projects.report;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import projects.dao.ProjectChangeListener;
+import projects.dao.ProjectDao;
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Page;
+import projects.entity.Project;
+import projects.entity.ProjectKey;
+import projects.entity.ProjectSummary;
+
+/**
+ * Materialized reporting figures: a {@link ProjectRollup} for every project and
+ * {@link RollupTotals} for all projects, for each category and for each difficulty. Reports and
+ * top-K queries are answered from memory instead of loading every project graph.
+ *
+ * The figures are built by {@link #rebuild()}, which runs on first use, and then updated
+ * incrementally from {@link ProjectChangeListener} events: an insert or delete adds or takes away
+ * one project's figures from its totals, and a details change swaps its hours and difficulty
+ * while keeping its material cost and categories. Register the rollups with
+ * {@link ProjectDao#addChangeListener(ProjectChangeListener)} before using them.
+ *
+ * A rebuild streams three narrow reads: the project_category links, every material row and the
+ * project summaries with their hours. Material rows are summed per project in chunks on the
+ * fork/join pool while the next chunk is read, and the group totals are added up by splitting the
+ * projects across the pool and merging the halves. The lock is not held while reading, so writes
+ * carry on: as in {@link projects.index.ProjectSearchIndex}, the events that arrive meanwhile are
+ * queued, and the new figures are swapped in and the queue replayed on them under a short write
+ * lock. A rebuild keeps answering from the old figures until then.
+ */
+public class ProjectRollups implements ProjectChangeListener {
+	private static final int SUMMARY_PAGE_SIZE = 1_000;
+	private static final int MATERIAL_CHUNK_SIZE = 16_384;
+	private static final int SPLIT_THRESHOLD = 2_048;
+
+	private final ProjectDao projectDao;
+	private final ForkJoinPool pool;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Lock loadLock = new ReentrantLock();
+
+	// guarded by the lock, replaced when a load finishes
+	private Map<Integer, ProjectRollup> rollups = new HashMap<>();
+	private Totals overall = new Totals();
+	private Map<Integer, Totals> byCategory = new HashMap<>();
+	private Map<Integer, Totals> byDifficulty = new HashMap<>();
+
+	// the events that arrived while a load was reading, null when no load is running
+	private List<Runnable> pending;
+
+	private volatile boolean loaded;
+
+	public ProjectRollups(ProjectDao projectDao) {
+		this(projectDao, ForkJoinPool.commonPool());
+	}
+
+	public ProjectRollups(ProjectDao projectDao, ForkJoinPool pool) {
+		this.projectDao = projectDao;
+		this.pool = pool;
+	}
+
+	public Optional<ProjectRollup> forProject(Integer projectId) {
+		return read(() -> Optional.ofNullable(rollups.get(projectId)));
+	}
+
+	public RollupTotals totals() {
+		// not overall::snapshot, that would bind the totals from before a first load replaces them
+		return read(() -> overall.snapshot());
+	}
+
+	// by category ID, categories with no projects are left out
+	public Map<Integer, RollupTotals> totalsByCategory() {
+		return read(() -> snapshot(byCategory));
+	}
+
+	// by difficulty, projects with no difficulty are only in the overall totals
+	public Map<Integer, RollupTotals> totalsByDifficulty() {
+		return read(() -> snapshot(byDifficulty));
+	}
+
+	// the projects whose actual hours are furthest over their estimate, worst first
+	public List<ProjectRollup> mostOverBudget(int k) {
+		return top(k, Comparator.comparing(ProjectRollup::hoursVariance),
+				rollup -> Objects.nonNull(rollup.hoursVariance()) && rollup.hoursVariance().signum() > 0);
+	}
+
+	// the projects with the highest material cost, most expensive first
+	public List<ProjectRollup> mostExpensive(int k) {
+		return top(k, Comparator.comparing(ProjectRollup::materialCost), rollup -> true);
+	}
+
+	/**
+	 * Finds the k highest projects in some order with a bounded heap, so only k projects are held
+	 * however many there are. Ties go to the lower project ID.
+	 *
+	 * @param k       The most projects to return.
+	 * @param order   The order, lowest first, as for a sort.
+	 * @param include Which projects to consider.
+	 * @return Up to k projects, highest first.
+	 */
+	public List<ProjectRollup> top(int k, Comparator<ProjectRollup> order, Predicate<ProjectRollup> include) {
+		return read(() -> {
+			if (k < 1) {
+				return List.of();
+			}
+
+			// the lowest of the best so far is at the head, so it is the one pushed out
+			Comparator<ProjectRollup> ranking = order.thenComparing(ProjectRollup::projectId, Comparator.reverseOrder());
+			PriorityQueue<ProjectRollup> best = new PriorityQueue<>(ranking);
+
+			for (ProjectRollup rollup : rollups.values()) {
+				if (include.test(rollup)) {
+					best.add(rollup);
+
+					if (best.size() > k) {
+						best.poll();
+					}
+				}
+			}
+
+			List<ProjectRollup> result = new ArrayList<>(best.size());
+
+			while (!best.isEmpty()) {
+				result.add(best.poll());
+			}
+
+			return result.reversed();
+		});
+	}
+
+	private static Map<Integer, RollupTotals> snapshot(Map<Integer, Totals> groups) {
+		Map<Integer, RollupTotals> snapshot = new TreeMap<>();
+		groups.forEach((key, totals) -> snapshot.put(key, totals.snapshot()));
+		return snapshot;
+	}
+
+	private <T> T read(Supplier<T> query) {
+		ensureLoaded();
+
+		lock.readLock().lock();
+
+		try {
+			return query.get();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void ensureLoaded() {
+		if (!loaded) {
+			loadLock.lock();
+
+			try {
+				if (!loaded) {
+					load();
+				}
+			} finally {
+				loadLock.unlock();
+			}
+		}
+	}
+
+	// recomputes everything from the database, queries and change events carry on meanwhile
+	public void rebuild() {
+		loadLock.lock();
+
+		try {
+			load();
+		} finally {
+			loadLock.unlock();
+		}
+	}
+
+	// called with the load lock held, the write lock is only held to start the queue and swap
+	private void load() {
+		setPending(new ArrayList<>());
+
+		try {
+			swap(read());
+		} catch (RuntimeException e) {
+			setPending(null);
+			throw e;
+		}
+	}
+
+	private void setPending(List<Runnable> queue) {
+		lock.writeLock().lock();
+
+		try {
+			pending = queue;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// the figures as read, before they are swapped in
+	private record Loaded(Map<Integer, ProjectRollup> rollups, Groups groups) {
+	}
+
+	private Loaded read() {
+		Map<Integer, List<Integer>> categoryIds = new HashMap<>();
+
+		projectDao.forEachProjectCategory((projectId, categoryId) -> {
+			if (Objects.nonNull(categoryId)) {
+				categoryIds.computeIfAbsent(projectId, key -> new ArrayList<>()).add(categoryId);
+			}
+		});
+
+		// each full chunk is summed on the pool while the next one is read from the socket
+		List<ForkJoinTask<Map<Integer, CostSum>>> costTasks = new ArrayList<>();
+		List<Material> chunk = new ArrayList<>(MATERIAL_CHUNK_SIZE);
+
+		projectDao.forEachMaterial(material -> {
+			chunk.add(material);
+
+			if (chunk.size() == MATERIAL_CHUNK_SIZE) {
+				costTasks.add(pool.submit(new MaterialCostTask(List.copyOf(chunk))));
+				chunk.clear();
+			}
+		});
+
+		costTasks.add(pool.submit(new MaterialCostTask(List.copyOf(chunk))));
+
+		Map<Integer, CostSum> costs = new HashMap<>();
+
+		for (ForkJoinTask<Map<Integer, CostSum>> task : costTasks) {
+			mergeCosts(costs, task.join());
+		}
+
+		List<ProjectRollup> projects = new ArrayList<>();
+		ProjectKey after = null;
+
+		do {
+			Page<ProjectSummary> page = projectDao.fetchProjectSummaryPage(after, SUMMARY_PAGE_SIZE, true);
+
+			for (ProjectSummary summary : page.items()) {
+				CostSum cost = costs.getOrDefault(summary.projectId(), new CostSum());
+
+				projects.add(new ProjectRollup(summary.projectId(), summary.projectName(), summary.difficulty(),
+						summary.estimatedHours(), summary.actualHours(), cost.cost, cost.count,
+						categoryIds.getOrDefault(summary.projectId(), List.of())));
+			}
+
+			after = page.next();
+		} while (Objects.nonNull(after));
+
+		Groups groups = pool.invoke(new GroupTask(projects, 0, projects.size()));
+		Map<Integer, ProjectRollup> byProject = new HashMap<>();
+		projects.forEach(rollup -> byProject.put(rollup.projectId(), rollup));
+
+		return new Loaded(byProject, groups);
+	}
+
+	private void swap(Loaded fresh) {
+		lock.writeLock().lock();
+
+		try {
+			rollups = fresh.rollups();
+			overall = fresh.groups().overall;
+			byCategory = fresh.groups().byCategory;
+			byDifficulty = fresh.groups().byDifficulty;
+			pending.forEach(Runnable::run);
+			pending = null;
+			loaded = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void projectsInserted(List<Project> projects) {
+		apply(() -> {
+			for (Project project : projects) {
+				CostSum cost = new CostSum();
+				project.getMaterials().forEach(cost::add);
+
+				List<Integer> categories = project.getCategories().stream().map(Category::getCategoryId).toList();
+
+				replace(project.getProjectId(), new ProjectRollup(project.getProjectId(), project.getProjectName(),
+						project.getDifficulty(), project.getEstimatedHours(), project.getActualHours(), cost.cost, cost.count,
+						categories));
+			}
+		});
+	}
+
+	@Override
+	public void projectDetailsChanged(List<Project> projects) {
+		apply(() -> {
+			for (Project project : projects) {
+				ProjectRollup old = rollups.get(project.getProjectId());
+				BigDecimal cost = Objects.isNull(old) ? BigDecimal.ZERO : old.materialCost();
+				int count = Objects.isNull(old) ? 0 : old.materialCount();
+				List<Integer> categories = Objects.isNull(old) ? List.of() : old.categoryIds();
+
+				replace(project.getProjectId(), new ProjectRollup(project.getProjectId(), project.getProjectName(),
+						project.getDifficulty(), project.getEstimatedHours(), project.getActualHours(), cost, count,
+						categories));
+			}
+		});
+	}
+
+	@Override
+	public void projectsDeleted(Collection<Integer> projectIds) {
+		apply(() -> projectIds.forEach(projectId -> replace(projectId, null)));
+	}
+
+	// see ProjectSearchIndex.apply, a change before the first load is read by the load itself
+	private void apply(Runnable change) {
+		lock.writeLock().lock();
+
+		try {
+			if (loaded) {
+				change.run();
+			}
+
+			if (Objects.nonNull(pending)) {
+				pending.add(change);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// takes the old figures of a project out of every total it was in and adds the new ones, null removes it
+	private void replace(Integer projectId, ProjectRollup rollup) {
+		ProjectRollup old = Objects.isNull(rollup) ? rollups.remove(projectId) : rollups.put(projectId, rollup);
+
+		if (Objects.nonNull(old)) {
+			addToGroups(old, -1);
+		}
+
+		if (Objects.nonNull(rollup)) {
+			addToGroups(rollup, 1);
+		}
+	}
+
+	private void addToGroups(ProjectRollup rollup, int sign) {
+		overall.add(rollup, sign);
+
+		for (Integer categoryId : rollup.categoryIds()) {
+			addToGroup(byCategory, categoryId, rollup, sign);
+		}
+
+		if (Objects.nonNull(rollup.difficulty())) {
+			addToGroup(byDifficulty, rollup.difficulty(), rollup, sign);
+		}
+	}
+
+	private static void addToGroup(Map<Integer, Totals> groups, Integer key, ProjectRollup rollup, int sign) {
+		Totals totals = groups.computeIfAbsent(key, ignored -> new Totals());
+		totals.add(rollup, sign);
+
+		if (totals.projectCount == 0) {
+			groups.remove(key);
+		}
+	}
+
+	private static void mergeCosts(Map<Integer, CostSum> into, Map<Integer, CostSum> from) {
+		from.forEach((projectId, cost) -> into.merge(projectId, cost, CostSum::merge));
+	}
+
+	// the material cost and count of one project as it is added up
+	private static final class CostSum {
+		private BigDecimal cost = BigDecimal.ZERO;
+		private int count;
+
+		void add(Material material) {
+			count++;
+
+			if (Objects.nonNull(material.getNumRequired()) && Objects.nonNull(material.getCost())) {
+				cost = cost.add(material.getCost().multiply(BigDecimal.valueOf(material.getNumRequired())));
+			}
+		}
+
+		CostSum merge(CostSum other) {
+			cost = cost.add(other.cost);
+			count += other.count;
+			return this;
+		}
+	}
+
+	// sums a range of material rows per project, splitting in half until the range is small
+	@SuppressWarnings("serial")
+	private static final class MaterialCostTask extends RecursiveTask<Map<Integer, CostSum>> {
+		private final List<Material> materials;
+		private final int from;
+		private final int to;
+
+		MaterialCostTask(List<Material> materials) {
+			this(materials, 0, materials.size());
+		}
+
+		private MaterialCostTask(List<Material> materials, int from, int to) {
+			this.materials = materials;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Map<Integer, CostSum> compute() {
+			if (to - from <= SPLIT_THRESHOLD) {
+				Map<Integer, CostSum> costs = new HashMap<>();
+
+				for (Material material : materials.subList(from, to)) {
+					costs.computeIfAbsent(material.getProjectId(), key -> new CostSum()).add(material);
+				}
+
+				return costs;
+			}
+
+			int middle = (from + to) >>> 1;
+			MaterialCostTask left = new MaterialCostTask(materials, from, middle);
+			left.fork();
+
+			Map<Integer, CostSum> right = new MaterialCostTask(materials, middle, to).compute();
+			Map<Integer, CostSum> costs = left.join();
+
+			mergeCosts(costs, right);
+			return costs;
+		}
+	}
+
+	// the running totals of a group of projects
+	private static final class Totals {
+		private int projectCount;
+		private BigDecimal materialCost = BigDecimal.ZERO;
+		private BigDecimal estimatedHours = BigDecimal.ZERO;
+		private BigDecimal actualHours = BigDecimal.ZERO;
+		private BigDecimal hoursVariance = BigDecimal.ZERO;
+
+		// sign is 1 to add the project and -1 to take it away again
+		void add(ProjectRollup rollup, int sign) {
+			projectCount += sign;
+			materialCost = plus(materialCost, rollup.materialCost(), sign);
+			estimatedHours = plus(estimatedHours, rollup.estimatedHours(), sign);
+			actualHours = plus(actualHours, rollup.actualHours(), sign);
+			hoursVariance = plus(hoursVariance, rollup.hoursVariance(), sign);
+		}
+
+		Totals merge(Totals other) {
+			projectCount += other.projectCount;
+			materialCost = materialCost.add(other.materialCost);
+			estimatedHours = estimatedHours.add(other.estimatedHours);
+			actualHours = actualHours.add(other.actualHours);
+			hoursVariance = hoursVariance.add(other.hoursVariance);
+			return this;
+		}
+
+		private static BigDecimal plus(BigDecimal total, BigDecimal value, int sign) {
+			if (Objects.isNull(value)) {
+				return total;
+			}
+
+			return sign > 0 ? total.add(value) : total.subtract(value);
+		}
+
+		RollupTotals snapshot() {
+			return new RollupTotals(projectCount, materialCost, estimatedHours, actualHours, hoursVariance);
+		}
+	}
+
+	private static final class Groups {
+		private final Totals overall = new Totals();
+		private final Map<Integer, Totals> byCategory = new HashMap<>();
+		private final Map<Integer, Totals> byDifficulty = new HashMap<>();
+
+		void add(ProjectRollup rollup) {
+			overall.add(rollup, 1);
+
+			for (Integer categoryId : rollup.categoryIds()) {
+				byCategory.computeIfAbsent(categoryId, key -> new Totals()).add(rollup, 1);
+			}
+
+			if (Objects.nonNull(rollup.difficulty())) {
+				byDifficulty.computeIfAbsent(rollup.difficulty(), key -> new Totals()).add(rollup, 1);
+			}
+		}
+
+		Groups merge(Groups other) {
+			overall.merge(other.overall);
+			other.byCategory.forEach((key, totals) -> byCategory.merge(key, totals, Totals::merge));
+			other.byDifficulty.forEach((key, totals) -> byDifficulty.merge(key, totals, Totals::merge));
+			return this;
+		}
+	}
+
+	// adds up the group totals of a range of projects, splitting in half until the range is small
+	@SuppressWarnings("serial")
+	private static final class GroupTask extends RecursiveTask<Groups> {
+		private final List<ProjectRollup> projects;
+		private final int from;
+		private final int to;
+
+		GroupTask(List<ProjectRollup> projects, int from, int to) {
+			this.projects = projects;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Groups compute() {
+			if (to - from <= SPLIT_THRESHOLD) {
+				Groups groups = new Groups();
+				projects.subList(from, to).forEach(groups::add);
+				return groups;
+			}
+
+			int middle = (from + to) >>> 1;
+			GroupTask left = new GroupTask(projects, from, middle);
+			left.fork();
+
+			Groups right = new GroupTask(projects, middle, to).compute();
+			return left.join().merge(right);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package projects.report;
+
+import java.math.BigDecimal;
+
+/**
+ * The figures of a group of projects added up: all projects, or those in one category or of one
+ * difficulty. Hours and costs that are not set count as zero, and the variance only includes
+ * projects with both hours set.
+ *
+ * @param projectCount The number of projects.
+ * @param materialCost The total material cost.
+ * @param estimatedHours The total estimated hours.
+ * @param actualHours The total actual hours.
+ * @param hoursVariance The total of actual less estimated hours.
+ */
+public record RollupTotals(int projectCount, BigDecimal materialCost, BigDecimal estimatedHours,
+		BigDecimal actualHours, BigDecimal hoursVariance) {
+}
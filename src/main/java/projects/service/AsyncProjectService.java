@@ -0,0 +1,226 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import projects.dao.DbConnection;
+import projects.dao.ProjectFetchMode;
+import projects.entity.DeleteProgress;
+import projects.entity.Page;
+import projects.entity.Project;
+import projects.entity.ProjectKey;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+import projects.entity.UpsertResult;
+import projects.exception.DbException;
+import projects.index.CategoryFilter;
+import provided.util.QueryScope;
+
+/**
+ * Runs the {@link ProjectService} methods without blocking the caller. Each call returns a
+ * CompletableFuture right away and runs on its own virtual thread, so callers can start many loads
+ * or mix reads and writes and wait for them together.
+ *
+ * No more calls run at once than the connection pool has connections; the rest wait on a semaphore
+ * instead of piling up on the pool's acquire timeout. Every call has a timeout, and cancelling the
+ * future or letting it time out cancels the statement that is running on the server through a
+ * {@link QueryScope}, so an abandoned query does not keep holding a connection.
+ *
+ * streamAllProjects has no async variant because the stream holds a connection until the caller
+ * closes it; use fetchProjectPage to read the listing a page at a time instead.
+ */
+public class AsyncProjectService implements AutoCloseable {
+	// long enough for a big batch insert, short enough that a stuck query does not hold a connection for good
+	private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+	private final ProjectService projectService;
+	private final Duration timeout;
+	private final int maxConcurrency;
+	private final Semaphore permits;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	public AsyncProjectService(ProjectService projectService) {
+		this(projectService, DEFAULT_TIMEOUT, DbConnection.getPool().getConfig().getMaxSize());
+	}
+
+	public AsyncProjectService(ProjectService projectService, Duration timeout, int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new DbException("Concurrency must be at least 1: " + maxConcurrency);
+		}
+
+		this.projectService = Objects.requireNonNull(projectService);
+		this.timeout = Objects.requireNonNull(timeout);
+		this.maxConcurrency = maxConcurrency;
+		this.permits = new Semaphore(maxConcurrency, true);
+	}
+
+	public CompletableFuture<Project> addProject(Project project) {
+		return submit(() -> projectService.addProject(project));
+	}
+
+	public CompletableFuture<List<Project>> addProjects(List<Project> projects) {
+		return submit(() -> projectService.addProjects(projects));
+	}
+
+	public CompletableFuture<Project> addProjectGraph(Project project) {
+		return submit(() -> projectService.addProjectGraph(project));
+	}
+
+	public CompletableFuture<List<Project>> addProjectGraphs(List<Project> projects) {
+		return submit(() -> projectService.addProjectGraphs(projects));
+	}
+
+	// completes with NoSuchElementException if the project ID is invalid, like the blocking version throws
+	public CompletableFuture<Project> fetchProjectById(Integer projectId) {
+		return submit(() -> projectService.fetchProjectById(projectId));
+	}
+
+	public CompletableFuture<Project> fetchProjectById(Integer projectId, ProjectFetchMode mode) {
+		return submit(() -> projectService.fetchProjectById(projectId, mode));
+	}
+
+	public CompletableFuture<List<Project>> fetchProjectsByIds(Collection<Integer> projectIds) {
+		return submit(() -> projectService.fetchProjectsByIds(projectIds));
+	}
+
+	public CompletableFuture<List<Project>> fetchAllProjects() {
+		return submit(projectService::fetchAllProjects);
+	}
+
+	public CompletableFuture<Page<Project>> fetchProjectPage(ProjectKey after, int pageSize) {
+		return submit(() -> projectService.fetchProjectPage(after, pageSize));
+	}
+
+	public CompletableFuture<List<Integer>> searchProjects(String query, int limit) {
+		return submit(() -> projectService.searchProjects(query, limit));
+	}
+
+	public CompletableFuture<List<Project>> fetchProjectsByCategory(CategoryFilter filter, Integer afterId, int limit) {
+		return submit(() -> projectService.fetchProjectsByCategory(filter, afterId, limit));
+	}
+
+	public CompletableFuture<Page<ProjectSummary>> fetchProjectSummaryPage(ProjectKey after, int pageSize,
+			boolean includeDetails) {
+		return submit(() -> projectService.fetchProjectSummaryPage(after, pageSize, includeDetails));
+	}
+
+	public CompletableFuture<UpsertResult> upsertProjects(List<Project> projects) {
+		return submit(() -> projectService.upsertProjects(projects));
+	}
+
+	public CompletableFuture<Void> modifyProjectDetails(Project project) {
+		return submit(() -> {
+			projectService.modifyProjectDetails(project);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> deleteProject(Integer projectId) {
+		return submit(() -> {
+			projectService.deleteProject(projectId);
+			return null;
+		});
+	}
+
+	// the listener is called on the virtual thread running the delete
+	public CompletableFuture<DeleteProgress> deleteProjects(Collection<Integer> projectIds,
+			Consumer<DeleteProgress> listener) {
+		return submit(() -> projectService.deleteProjects(projectIds, listener));
+	}
+
+	public CompletableFuture<List<Step>> addSteps(Integer projectId, List<Step> steps) {
+		return submit(() -> projectService.addSteps(projectId, steps));
+	}
+
+	public CompletableFuture<Step> insertStep(Integer projectId, Step step, Integer afterStepId) {
+		return submit(() -> projectService.insertStep(projectId, step, afterStepId));
+	}
+
+	public CompletableFuture<Void> moveStep(Integer projectId, Integer stepId, Integer afterStepId) {
+		return submit(() -> {
+			projectService.moveStep(projectId, stepId, afterStepId);
+			return null;
+		});
+	}
+
+	/*
+	 * Runs the call on a virtual thread once a permit is free. The deadline starts when the call is
+	 * submitted, so time spent waiting for a permit counts against it. If the future finishes early,
+	 * by cancel or timeout, the scope is cancelled: a query that is running is stopped and one that
+	 * has not started yet fails at once.
+	 */
+	private <T> CompletableFuture<T> submit(Supplier<T> call) {
+		long timeoutMillis = timeout.toMillis();
+		QueryScope scope = new QueryScope(timeoutMillis);
+		CompletableFuture<T> future = new CompletableFuture<>();
+
+		future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((result, failure) -> {
+			if (Objects.nonNull(failure)) {
+				scope.cancel();
+			}
+		});
+
+		executor.execute(() -> {
+			boolean acquired = false;
+
+			try {
+				acquired = permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+
+				if (!acquired) {
+					throw new DbException("Timed out after " + timeoutMillis + "ms waiting to run");
+				}
+
+				if (future.isDone()) {
+					return;
+				}
+
+				scope.enter();
+
+				try {
+					future.complete(call.get());
+				} finally {
+					scope.exit();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.completeExceptionally(new DbException("Interrupted while waiting to run", e));
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			} finally {
+				if (acquired) {
+					permits.release();
+				}
+			}
+		});
+
+		return future;
+	}
+
+	// the number of calls currently holding a permit
+	public int getRunningCalls() {
+		return maxConcurrency - permits.availablePermits();
+	}
+
+	public int getWaitingCalls() {
+		return permits.getQueueLength();
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	// stops taking calls and waits for the ones already submitted to finish
+	@Override
+	public void close() {
+		executor.close();
+	}
+}
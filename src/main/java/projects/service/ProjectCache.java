@@ -0,0 +1,178 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import projects.entity.Project;
+
+/**
+ * A bounded, read-through cache of detailed projects keyed by project ID. It is used by
+ * {@link ProjectService} so that the handful of projects that get most of the reads do not go to
+ * MySQL every time.
+ *
+ * Entries are kept in least-recently-used order. Each entry has a weight, by default one for the
+ * project plus one for each material, step and category, and the least recently used entries are
+ * evicted when the total weight goes over the limit. An optional time to live expires entries no
+ * matter how often they are read, which bounds how stale a project can get when another process
+ * changes the database.
+ *
+ * The same Project object is handed to every caller that reads it from the cache, so callers must
+ * treat it as read-only and write changes through a copy, as ProjectsApp does.
+ *
+ * A load runs outside the cache lock so a slow query does not block readers of other projects. To
+ * make sure a load that started before an invalidation cannot put the old project back afterwards,
+ * every invalidation moves a counter forward and a load only stores its result if the counter has
+ * not moved while it ran.
+ */
+public class ProjectCache {
+	private final long maxWeight;
+	private final long ttlNanos;
+	private final ToLongFunction<Project> weigher;
+	private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long totalWeight;
+	private long invalidationCount;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+
+	// weighs a project by the number of rows it was built from
+	public static long rowWeight(Project project) {
+		return 1L + project.getMaterials().size() + project.getSteps().size() + project.getCategories().size();
+	}
+
+	public ProjectCache(long maxWeight, Duration ttl) {
+		this(maxWeight, ttl, ProjectCache::rowWeight);
+	}
+
+	/**
+	 * @param maxWeight The largest total weight the cache holds before evicting.
+	 * @param ttl       How long an entry stays valid after it is loaded. Null or zero means entries
+	 *                  never expire.
+	 * @param weigher   Computes the weight of a project.
+	 */
+	public ProjectCache(long maxWeight, Duration ttl, ToLongFunction<Project> weigher) {
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("Cache weight limit must be at least 1: " + maxWeight);
+		}
+
+		this.maxWeight = maxWeight;
+		this.ttlNanos = Objects.isNull(ttl) ? 0 : ttl.toNanos();
+		this.weigher = Objects.requireNonNull(weigher);
+	}
+
+	/**
+	 * Returns the cached project, or loads it with the given loader and caches the result.
+	 *
+	 * @param projectId The project ID.
+	 * @param loader    Loads the project on a miss. It may return null, which is not cached.
+	 * @return The project, or null if the loader returned null.
+	 */
+	public Project get(Integer projectId, Function<Integer, Project> loader) {
+		long invalidationsBeforeLoad;
+
+		synchronized (this) {
+			Entry entry = entries.get(projectId);
+
+			if (Objects.nonNull(entry)) {
+				if (!isExpired(entry)) {
+					hits++;
+					return entry.project;
+				}
+
+				remove(projectId);
+				expirations++;
+			}
+
+			misses++;
+			invalidationsBeforeLoad = invalidationCount;
+		}
+
+		Project project = loader.apply(projectId);
+
+		if (Objects.nonNull(project)) {
+			synchronized (this) {
+				if (invalidationCount == invalidationsBeforeLoad) {
+					put(projectId, project);
+				}
+			}
+		}
+
+		return project;
+	}
+
+	// drops one project, call after any write that changes it
+	public synchronized void invalidate(Integer projectId) {
+		invalidationCount++;
+		remove(projectId);
+	}
+
+	public synchronized void invalidateAll() {
+		invalidationCount++;
+		entries.clear();
+		totalWeight = 0;
+	}
+
+	public synchronized Stats getStats() {
+		return new Stats(hits, misses, evictions, expirations, entries.size(), totalWeight);
+	}
+
+	private void put(Integer projectId, Project project) {
+		remove(projectId);
+
+		long weight = weigher.applyAsLong(project);
+
+		// a project heavier than the whole cache would just evict everything and then itself
+		if (weight > maxWeight) {
+			return;
+		}
+
+		entries.put(projectId, new Entry(project, weight, System.nanoTime()));
+		totalWeight += weight;
+
+		Iterator<Map.Entry<Integer, Entry>> eldest = entries.entrySet().iterator();
+
+		while (totalWeight > maxWeight && eldest.hasNext()) {
+			totalWeight -= eldest.next().getValue().weight;
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	private void remove(Integer projectId) {
+		Entry removed = entries.remove(projectId);
+
+		if (Objects.nonNull(removed)) {
+			totalWeight -= removed.weight;
+		}
+	}
+
+	private boolean isExpired(Entry entry) {
+		return ttlNanos > 0 && System.nanoTime() - entry.loadedNanos > ttlNanos;
+	}
+
+	private record Entry(Project project, long weight, long loadedNanos) {
+	}
+
+	/**
+	 * A snapshot of the cache counters.
+	 */
+	public record Stats(long hits, long misses, long evictions, long expirations, int size, long weight) {
+		public double hitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 0 : (double) hits / requests;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, expirations=%d, size=%d, weight=%d",
+					hits, misses, hitRate() * 100, evictions, expirations, size, weight);
+		}
+	}
+}
@@ -3,57 +3,317 @@
  */
 package projects.service;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import projects.dao.ProjectDao;
+import projects.dao.ProjectFetchMode;
+import projects.entity.DeleteProgress;
+import projects.entity.ImportProgress;
+import projects.entity.Page;
 import projects.entity.Project;
+import projects.entity.ProjectKey;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+import projects.entity.UpsertResult;
 import projects.exception.DbException;
+import projects.importer.ProjectImporter;
+import projects.index.CategoryFilter;
+import projects.index.CategoryIndex;
+import projects.index.ProjectSearchIndex;
+import projects.metrics.Metrics;
+import projects.metrics.OperationMetrics;
+import projects.report.ProjectRollups;
 
 /** this Class is implementing the service layer, remember this is a 3-tier application. In this case the CRUD (create,read,ect) are so simple that this acts mainly as a pss-through from
  * from the input layer to the data layer
  */
-public class ProjectService {
+public class ProjectService implements AutoCloseable {
+	// default cache limits, about a thousand typical projects and never older than five minutes
+	private static final long DEFAULT_CACHE_WEIGHT = 20_000;
+	private static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes(5);
+
+	// latency and error counts for each service method, compare with the ProjectDao ones to see what the cache saves
+	private static final OperationMetrics ADD_PROJECT_METRICS = Metrics.operation("ProjectService.addProject");
+	private static final OperationMetrics ADD_PROJECTS_METRICS = Metrics.operation("ProjectService.addProjects");
+	private static final OperationMetrics ADD_PROJECT_GRAPH_METRICS = Metrics.operation("ProjectService.addProjectGraph");
+	private static final OperationMetrics ADD_PROJECT_GRAPHS_METRICS = Metrics.operation("ProjectService.addProjectGraphs");
+	private static final OperationMetrics FETCH_PROJECT_BY_ID_METRICS = Metrics.operation("ProjectService.fetchProjectById");
+	private static final OperationMetrics FETCH_PROJECT_BY_ID_UNCACHED_METRICS = Metrics.operation("ProjectService.fetchProjectByIdUncached");
+	private static final OperationMetrics FETCH_PROJECTS_BY_IDS_METRICS = Metrics.operation("ProjectService.fetchProjectsByIds");
+	private static final OperationMetrics FETCH_ALL_PROJECTS_METRICS = Metrics.operation("ProjectService.fetchAllProjects");
+	private static final OperationMetrics STREAM_ALL_PROJECTS_METRICS = Metrics.operation("ProjectService.streamAllProjects");
+	private static final OperationMetrics FETCH_PROJECT_PAGE_METRICS = Metrics.operation("ProjectService.fetchProjectPage");
+	private static final OperationMetrics FETCH_PROJECT_SUMMARY_PAGE_METRICS = Metrics.operation("ProjectService.fetchProjectSummaryPage");
+	private static final OperationMetrics UPSERT_PROJECTS_METRICS = Metrics.operation("ProjectService.upsertProjects");
+	private static final OperationMetrics MODIFY_PROJECT_DETAILS_METRICS = Metrics.operation("ProjectService.modifyProjectDetails");
+	private static final OperationMetrics DELETE_PROJECT_METRICS = Metrics.operation("ProjectService.deleteProject");
+	private static final OperationMetrics DELETE_PROJECTS_METRICS = Metrics.operation("ProjectService.deleteProjects");
+	private static final OperationMetrics IMPORT_PROJECTS_METRICS = Metrics.operation("ProjectService.importProjects");
+	private static final OperationMetrics ADD_STEPS_METRICS = Metrics.operation("ProjectService.addSteps");
+	private static final OperationMetrics INSERT_STEP_METRICS = Metrics.operation("ProjectService.insertStep");
+	private static final OperationMetrics MOVE_STEP_METRICS = Metrics.operation("ProjectService.moveStep");
+	private static final OperationMetrics SEARCH_PROJECTS_METRICS = Metrics.operation("ProjectService.searchProjects");
+	private static final OperationMetrics FETCH_PROJECTS_BY_CATEGORY_METRICS = Metrics.operation("ProjectService.fetchProjectsByCategory");
+	private static final OperationMetrics COUNT_PROJECTS_BY_CATEGORY_METRICS = Metrics.operation("ProjectService.countProjectsByCategory");
+
 	private ProjectDao projectDao = new ProjectDao();
+	private final ProjectCache projectCache;
+	private ProjectSearchIndex searchIndex;
+	private CategoryIndex categoryIndex;
+	private ProjectRollups projectRollups;
+
+	public ProjectService() {
+		this(new ProjectCache(DEFAULT_CACHE_WEIGHT, DEFAULT_CACHE_TTL));
+	}
+
+	public ProjectService(ProjectCache projectCache) {
+		this.projectCache = projectCache;
+	}
+
+	public ProjectCache getProjectCache() {
+		return projectCache;
+	}
+
+	// created the first time it's asked for, it then listens to every DAO write until close is called
+	public synchronized ProjectSearchIndex getSearchIndex() {
+		if(Objects.isNull(searchIndex)) {
+			searchIndex = new ProjectSearchIndex(projectDao);
+			ProjectDao.addChangeListener(searchIndex);
+		}
+		
+		return searchIndex;
+	}
+
+	// same as the search index, answers category filters and counts from memory once loaded
+	public synchronized CategoryIndex getCategoryIndex() {
+		if(Objects.isNull(categoryIndex)) {
+			categoryIndex = new CategoryIndex(projectDao);
+			ProjectDao.addChangeListener(categoryIndex);
+		}
+		
+		return categoryIndex;
+	}
+
+	// per project, category and difficulty totals and top-K reports, built on first use and kept current like the indexes
+	public synchronized ProjectRollups getProjectRollups() {
+		if(Objects.isNull(projectRollups)) {
+			projectRollups = new ProjectRollups(projectDao);
+			ProjectDao.addChangeListener(projectRollups);
+		}
+		
+		return projectRollups;
+	}
+
+	// the DAO listener list is static, so each index created here stays registered, and reachable, until it is removed
+	@Override
+	public synchronized void close() {
+		if(Objects.nonNull(searchIndex)) {
+			ProjectDao.removeChangeListener(searchIndex);
+			searchIndex = null;
+		}
+		
+		if(Objects.nonNull(categoryIndex)) {
+			ProjectDao.removeChangeListener(categoryIndex);
+			categoryIndex = null;
+		}
+		
+		if(Objects.nonNull(projectRollups)) {
+			ProjectDao.removeChangeListener(projectRollups);
+			projectRollups = null;
+		}
+	}
 	
 	// this Method calls the DAO class to insert a project row
 
 	public Project addProject(Project project) {
-		return projectDao.insertProject(project);
+		return ADD_PROJECT_METRICS.time(() -> projectDao.insertProject(project));
 		
 	}
 
+	// inserts many project rows with batched multi-row INSERTs in one transaction, each project gets its new ID
+
+	public List<Project> addProjects(List<Project> projects) {
+		return ADD_PROJECTS_METRICS.time(() -> projectDao.insertProjects(projects));
+	}
+
+	// inserts projects along with their materials, steps and category links in one transaction
+
+	public Project addProjectGraph(Project project) {
+		return ADD_PROJECT_GRAPH_METRICS.time(() -> projectDao.insertProjectGraph(project));
+	}
+
+	public List<Project> addProjectGraphs(List<Project> projects) {
+		return ADD_PROJECT_GRAPHS_METRICS.time(() -> projectDao.insertProjectGraphs(projects));
+	}
+
 	// this method call the DAO to get the project details like materials steps and categories, throws exception if project ID is invalid
+	// reads go through the project cache, so only a miss reaches the DAO
 	public Project fetchProjectById(Integer projectId) {
-		return projectDao.fetchProjectById(projectId).orElseThrow(() -> new NoSuchElementException("Project with project ID=" + projectId + " does not exist. "));
-		
-	
+		return FETCH_PROJECT_BY_ID_METRICS.time(() -> {
+			Project project = projectCache.get(projectId, id -> projectDao.fetchProjectById(id).orElse(null));
+			
+			if(Objects.isNull(project)) {
+				throw new NoSuchElementException("Project with project ID=" + projectId + " does not exist. ");
+			}
+			
+			return project;
+		});
+	}
+
+	// same as above but lets the caller pick how the DAO loads the graph, used to compare the two fetch paths
+	// this always goes to the DAO so the cache does not hide the difference
+	public Project fetchProjectById(Integer projectId, ProjectFetchMode mode) {
+		return FETCH_PROJECT_BY_ID_UNCACHED_METRICS.time(() -> projectDao.fetchProjectById(projectId, mode).orElseThrow(() -> new NoSuchElementException("Project with project ID=" + projectId + " does not exist. ")));
 	}
 	
+	// loads the details of many projects with a constant number of queries per chunk of IDs, missing IDs are skipped
+	public List<Project> fetchProjectsByIds(Collection<Integer> projectIds) {
+		return FETCH_PROJECTS_BY_IDS_METRICS.time(() -> projectDao.fetchProjectsByIds(projectIds));
+	}
+
 	// This method calls the DAO to retrieve all project rows not details though
 
 	public List<Project> fetchAllProjects() {
 		
-		return projectDao.fetchAllProjects();
+		return FETCH_ALL_PROJECTS_METRICS.time(projectDao::fetchAllProjects);
 	}
 	
+	// streams every project row without holding them all in memory, the caller must close the stream
+	public Stream<Project> streamAllProjects() {
+		return STREAM_ALL_PROJECTS_METRICS.time(projectDao::streamAllProjects);
+	}
+
+	// one page of project rows in name order, pass the page's next key back in to get the following page
+	public Page<Project> fetchProjectPage(ProjectKey after, int pageSize) {
+		return FETCH_PROJECT_PAGE_METRICS.time(() -> projectDao.fetchProjectPage(after, pageSize));
+	}
+
+	// the IDs of the projects whose name, notes, steps or materials contain every word of the query, best match first
+	// answered from the in-memory search index, which is loaded from the database by the first search
+	public List<Integer> searchProjects(String query, int limit) {
+		return SEARCH_PROJECTS_METRICS.time(() -> getSearchIndex().search(query, limit));
+	}
+
+	// the detailed projects that meet a category filter, in project ID order, a page at a time from after the given ID
+	// the IDs come from the in-memory category index, so only the matching projects are read from the database
+	public List<Project> fetchProjectsByCategory(CategoryFilter filter, Integer afterId, int limit) {
+		return FETCH_PROJECTS_BY_CATEGORY_METRICS.time(() -> projectDao.fetchProjectsByIds(getCategoryIndex().projectIds(filter, afterId, limit)));
+	}
+
+	// how many projects meet a category filter, answered from memory
+	public int countProjectsByCategory(CategoryFilter filter) {
+		return COUNT_PROJECTS_BY_CATEGORY_METRICS.time(() -> getCategoryIndex().count(filter));
+	}
+
+	// like fetchProjectPage but only the ID and name, plus difficulty and hours if asked for, for list views
+	public Page<ProjectSummary> fetchProjectSummaryPage(ProjectKey after, int pageSize, boolean includeDetails) {
+		return FETCH_PROJECT_SUMMARY_PAGE_METRICS.time(() -> projectDao.fetchProjectSummaryPage(after, pageSize, includeDetails));
+	}
+
+	// inserts or updates project rows by project name in a few round trips per chunk, for syncing from another system
+	// updated projects may be cached, so every project that has an ID afterwards is dropped from the cache
+	public UpsertResult upsertProjects(List<Project> projects) {
+		return UPSERT_PROJECTS_METRICS.time(() -> {
+			try {
+				return projectDao.upsertProjects(projects);
+			}
+			finally {
+				projects.stream().map(Project::getProjectId).filter(Objects::nonNull).forEach(projectCache::invalidate);
+			}
+		});
+	}
+
 // week 11 homework, "Project Service.Java" step 1 a & b calling the project.Dao passing object as a parameter, boolean that indicates if the UPDATE worked, throw DbExcepton if it didn't work " does not exist" 
+	// the cached copy is dropped even if the update fails, since we can't tell what reached the database
 	public void modifyProjectDetails(Project project) {
-		if(!projectDao.modifyProjectDetails(project)) {
-			throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");
-		
-		
+		MODIFY_PROJECT_DETAILS_METRICS.run(() -> {
+			try {
+				if(!projectDao.modifyProjectDetails(project)) {
+					throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");
+				}
+			}
+			finally {
+				projectCache.invalidate(project.getProjectId());
+			}
+		});
 	}
 
-	
-		
+	public void deleteProject(Integer projectId) {
+		DELETE_PROJECT_METRICS.run(() -> {
+			try {
+				if(!projectDao.deleteProject(projectId)) {
+					throw new NoSuchElementException("Project with project ID=" + projectId + " does not exist. ");
+				}
+			}
+			finally {
+				projectCache.invalidate(projectId);
+			}
+		});
 	}
 
-	public void deleteProject(Integer projectId) {
-	if(!projectDao.deleteProject(projectId)) {
-		throw new DbException ("Project with ID=" + projectId + " does not exist. ");
+	// deletes many projects in chunks that each commit on their own, the listener hears after every chunk
+	// the cache is cleared of every ID even if the delete fails part way, since earlier chunks are already gone
+	public DeleteProgress deleteProjects(Collection<Integer> projectIds, Consumer<DeleteProgress> listener) {
+		return DELETE_PROJECTS_METRICS.time(() -> {
+			try {
+				return projectDao.deleteProjects(projectIds, listener);
+			}
+			finally {
+				projectIds.stream().filter(Objects::nonNull).forEach(projectCache::invalidate);
+			}
+		});
 	}
-		
+
+	// imports the projects in a .csv or .jsonl file through a streaming parse pipeline, the listener hears after every chunk commits
+	// a stopped import of the same file resumes after its last committed chunk, new projects are never in the cache so nothing is dropped
+	public ImportProgress importProjects(Path file, Consumer<ImportProgress> listener) {
+		return IMPORT_PROJECTS_METRICS.time(() -> new ProjectImporter(projectDao).importProjects(file, listener));
+	}
+
+	// appends steps after the project's last step with a constant number of round trips, however many steps it has
+	public List<Step> addSteps(Integer projectId, List<Step> steps) {
+		return ADD_STEPS_METRICS.time(() -> {
+			try {
+				return projectDao.addSteps(projectId, steps);
+			}
+			finally {
+				projectCache.invalidate(projectId);
+			}
+		});
+	}
+
+	// adds a step after another one, or first if afterStepId is null, without renumbering the steps around it
+	public Step insertStep(Integer projectId, Step step, Integer afterStepId) {
+		return INSERT_STEP_METRICS.time(() -> {
+			try {
+				return projectDao.insertStep(projectId, step, afterStepId);
+			}
+			finally {
+				projectCache.invalidate(projectId);
+			}
+		});
+	}
+
+	// moves a step after another one, or first if afterStepId is null, throws DbException if the project has no such step
+	public void moveStep(Integer projectId, Integer stepId, Integer afterStepId) {
+		MOVE_STEP_METRICS.run(() -> {
+			try {
+				if(!projectDao.moveStep(projectId, stepId, afterStepId)) {
+					throw new DbException("Step with ID=" + stepId + " is not a step of project with ID=" + projectId + ".");
+				}
+			}
+			finally {
+				projectCache.invalidate(projectId);
+			}
+		});
 	}
 
+
 }
@@ -0,0 +1,281 @@
+package projects.web;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Just enough JSON for the HTTP front end, so the project does not need a JSON library. The writer
+ * side escapes strings and writes scalar values straight to an Appendable, which lets responses be
+ * streamed without building a document first. The reader side parses a request body into Maps,
+ * Lists, Strings, BigDecimals, Booleans and nulls. It refuses documents nested more than
+ * {@value #MAX_DEPTH} levels deep and numbers longer than {@value #MAX_NUMBER_LENGTH} characters,
+ * so a hostile body costs no more than its length to parse.
+ */
+final class Json {
+	// deeper documents are refused, so a body of nested brackets cannot exhaust the handler's stack
+	private static final int MAX_DEPTH = 64;
+
+	// the longest number accepted, far more digits than any column holds
+	private static final int MAX_NUMBER_LENGTH = 64;
+
+	private final String text;
+	private int pos;
+	private int depth;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	// writes a string, number, boolean or null as a JSON value
+	static void writeValue(Appendable out, Object value) {
+		try {
+			if (Objects.isNull(value)) {
+				out.append("null");
+			} else if (value instanceof String string) {
+				writeString(out, string);
+			} else if (value instanceof BigDecimal decimal) {
+				out.append(decimal.toPlainString());
+			} else if (value instanceof Number || value instanceof Boolean) {
+				out.append(value.toString());
+			} else {
+				writeString(out, value.toString());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeString(Appendable out, String value) throws IOException {
+		out.append('"');
+
+		for (int index = 0; index < value.length(); index++) {
+			char ch = value.charAt(index);
+
+			switch (ch) {
+			case '"' -> out.append("\\\"");
+			case '\\' -> out.append("\\\\");
+			case '\n' -> out.append("\\n");
+			case '\r' -> out.append("\\r");
+			case '\t' -> out.append("\\t");
+			default -> {
+				if (ch < 0x20) {
+					out.append(String.format("\\u%04x", (int)ch));
+				} else {
+					out.append(ch);
+				}
+			}
+			}
+		}
+
+		out.append('"');
+	}
+
+	/**
+	 * Parses a JSON document.
+	 *
+	 * @param text The document.
+	 * @return The top level value.
+	 * @throws IllegalArgumentException Thrown if the text is not valid JSON.
+	 */
+	static Object parse(String text) {
+		Json parser = new Json(text);
+		Object value = parser.readValue();
+
+		parser.skipWhitespace();
+
+		if (parser.pos != text.length()) {
+			throw parser.error("Unexpected text after the JSON value");
+		}
+
+		return value;
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+
+		if (pos >= text.length()) {
+			throw error("Unexpected end of JSON");
+		}
+
+		char ch = text.charAt(pos);
+
+		return switch (ch) {
+		case '{' -> readNested(true);
+		case '[' -> readNested(false);
+		case '"' -> readString();
+		case 't' -> readLiteral("true", Boolean.TRUE);
+		case 'f' -> readLiteral("false", Boolean.FALSE);
+		case 'n' -> readLiteral("null", null);
+		default -> readNumber();
+		};
+	}
+
+	private Object readNested(boolean object) {
+		if (++depth > MAX_DEPTH) {
+			throw error("JSON is nested more than " + MAX_DEPTH + " levels deep");
+		}
+
+		Object value = object ? readObject() : readArray();
+		depth--;
+		return value;
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<>();
+		pos++;
+		skipWhitespace();
+
+		if (peek() == '}') {
+			pos++;
+			return object;
+		}
+
+		while (true) {
+			skipWhitespace();
+
+			if (peek() != '"') {
+				throw error("Expected a field name");
+			}
+
+			String name = readString();
+			skipWhitespace();
+			expect(':');
+			object.put(name, readValue());
+			skipWhitespace();
+
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+	}
+
+	private List<Object> readArray() {
+		List<Object> array = new ArrayList<>();
+		pos++;
+		skipWhitespace();
+
+		if (peek() == ']') {
+			pos++;
+			return array;
+		}
+
+		while (true) {
+			array.add(readValue());
+			skipWhitespace();
+
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+	}
+
+	private String readString() {
+		StringBuilder builder = new StringBuilder();
+		pos++;
+
+		while (pos < text.length()) {
+			char ch = text.charAt(pos++);
+
+			if (ch == '"') {
+				return builder.toString();
+			}
+
+			if (ch != '\\') {
+				builder.append(ch);
+				continue;
+			}
+
+			if (pos >= text.length()) {
+				break;
+			}
+
+			char escaped = text.charAt(pos++);
+
+			switch (escaped) {
+			case '"', '\\', '/' -> builder.append(escaped);
+			case 'b' -> builder.append('\b');
+			case 'f' -> builder.append('\f');
+			case 'n' -> builder.append('\n');
+			case 'r' -> builder.append('\r');
+			case 't' -> builder.append('\t');
+			case 'u' -> {
+				if (pos + 4 > text.length()) {
+					throw error("Bad unicode escape");
+				}
+
+				try {
+					builder.append((char)Integer.parseInt(text.substring(pos, pos + 4), 16));
+				} catch (NumberFormatException e) {
+					throw error("Bad unicode escape");
+				}
+
+				pos += 4;
+			}
+			default -> throw error("Bad escape \\" + escaped);
+			}
+		}
+
+		throw error("Unterminated string");
+	}
+
+	private BigDecimal readNumber() {
+		int start = pos;
+
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+			pos++;
+		}
+
+		if (pos - start > MAX_NUMBER_LENGTH) {
+			throw error("Number is longer than " + MAX_NUMBER_LENGTH + " characters");
+		}
+
+		try {
+			return new BigDecimal(text.substring(start, pos));
+		} catch (NumberFormatException e) {
+			throw error("Expected a value");
+		}
+	}
+
+	private Object readLiteral(String literal, Object value) {
+		if (!text.startsWith(literal, pos)) {
+			throw error("Expected a value");
+		}
+
+		pos += literal.length();
+		return value;
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private char peek() {
+		return pos < text.length() ? text.charAt(pos) : '\0';
+	}
+
+	private void expect(char ch) {
+		if (peek() != ch) {
+			throw error("Expected '" + ch + "'");
+		}
+
+		pos++;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos);
+	}
+}
@@ -0,0 +1,282 @@
+package projects.web;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import projects.entity.Page;
+import projects.entity.Project;
+import projects.entity.ProjectKey;
+import projects.entity.ProjectSummary;
+import projects.exception.DbException;
+import projects.service.ProjectService;
+
+/**
+ * A JSON front end for the same operations as the {@link projects.ProjectsApp} menu, built on the
+ * JDK's HTTP server. Every request runs on its own virtual thread, so a request waiting on the
+ * database does not hold up any other; the connection pool is what limits how many reach MySQL at
+ * once.
+ *
+ * <pre>
+ * POST   /projects       add a project, with materials, steps and category IDs if given
+ * GET    /projects       list project summaries (ID, name, difficulty and hours) in name order
+ * GET    /projects/{id}  a project with its materials, steps and categories
+ * PUT    /projects/{id}  update the fields given in the body, the rest are kept
+ * DELETE /projects/{id}  delete a project
+ * </pre>
+ *
+ * A body that breaks a unique key, such as a project name that is taken, gets a 409. Other
+ * database failures get a 500 without the driver's message.
+ *
+ * Responses are written with chunked encoding as they are produced. The listing reads the projects
+ * a page at a time and sends each page before reading the next, so neither the whole listing nor a
+ * database connection is held while a slow client reads it.
+ */
+public class ProjectHttpServer implements AutoCloseable {
+	private static final String PROJECTS_PATH = "/projects";
+	private static final int LIST_PAGE_SIZE = 500;
+	private static final int MAX_BODY_BYTES = 1_048_576;
+
+	private final ProjectService projectService;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	public ProjectHttpServer(ProjectService projectService, int port) throws IOException {
+		this.projectService = projectService;
+
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.setExecutor(executor);
+		server.createContext(PROJECTS_PATH, this::handle);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	// the port actually bound, useful when the server was created with port 0
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		server.stop(1);
+		executor.close();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			Integer projectId = parseProjectId(exchange.getRequestURI().getPath());
+
+			if (Objects.isNull(projectId)) {
+				switch (method) {
+				case "GET" -> listProjects(exchange);
+				case "POST" -> addProject(exchange);
+				default -> sendError(exchange, 405, method + " is not supported on " + PROJECTS_PATH);
+				}
+			} else {
+				switch (method) {
+				case "GET" -> getProject(exchange, projectId);
+				case "PUT" -> updateProject(exchange, projectId);
+				case "DELETE" -> deleteProject(exchange, projectId);
+				default -> sendError(exchange, 405, method + " is not supported on a project");
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			sendError(exchange, 400, e.getMessage());
+		} catch (NoSuchElementException e) {
+			sendError(exchange, 404, e.getMessage());
+		} catch (DbException e) {
+			if (isConstraintViolation(e)) {
+				sendError(exchange, 409, "The project conflicts with an existing one, for example its name is already taken");
+			} else {
+				sendServerError(exchange, e);
+			}
+		} catch (UncheckedIOException e) {
+			// the client went away while the response was being written
+		} catch (RuntimeException | StackOverflowError e) {
+			// anything else is a bug, the client still gets an answer and the handler thread carries on
+			sendServerError(exchange, e);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	// null for the collection, the ID for /projects/{id}
+	private Integer parseProjectId(String path) {
+		String rest = path.substring(PROJECTS_PATH.length());
+
+		if (rest.isEmpty() || rest.equals("/")) {
+			return null;
+		}
+
+		try {
+			return Integer.valueOf(rest.substring(1));
+		} catch (NumberFormatException e) {
+			throw new NoSuchElementException("No such resource: " + path);
+		}
+	}
+
+	private void listProjects(HttpExchange exchange) throws IOException {
+		try (Writer out = startResponse(exchange, 200)) {
+			out.write('[');
+
+			ProjectKey after = null;
+			String separator = "";
+
+			do {
+				Page<ProjectSummary> page = projectService.fetchProjectSummaryPage(after, LIST_PAGE_SIZE, true);
+
+				for (ProjectSummary summary : page.items()) {
+					out.write(separator);
+					ProjectJson.writeProjectSummary(out, summary);
+					separator = ",";
+				}
+
+				// push the page to the client before reading the next one
+				out.flush();
+				after = page.next();
+			} while (Objects.nonNull(after));
+
+			out.write(']');
+		}
+	}
+
+	private void addProject(HttpExchange exchange) throws IOException {
+		Project project = ProjectJson.readProject(readBody(exchange));
+
+		if (Objects.isNull(project.getProjectName())) {
+			throw new IllegalArgumentException("projectName is required");
+		}
+
+		boolean hasChildren = !project.getMaterials().isEmpty() || !project.getSteps().isEmpty()
+				|| !project.getCategories().isEmpty();
+		Project dbProject = hasChildren ? projectService.addProjectGraph(project) : projectService.addProject(project);
+
+		try (Writer out = startResponse(exchange, 201)) {
+			ProjectJson.writeProject(out, dbProject);
+		}
+	}
+
+	private void getProject(HttpExchange exchange, Integer projectId) throws IOException {
+		Project project = projectService.fetchProjectById(projectId);
+
+		try (Writer out = startResponse(exchange, 200)) {
+			ProjectJson.writeProject(out, project);
+		}
+	}
+
+	// like the menu's update, fields left out of the body keep their current values
+	private void updateProject(HttpExchange exchange, Integer projectId) throws IOException {
+		Project changes = ProjectJson.readProject(readBody(exchange));
+		Project current = projectService.fetchProjectById(projectId);
+		// a copy, the current project may be the instance the service caches
+		Project project = current.copy();
+
+		if (Objects.nonNull(changes.getProjectName())) {
+			project.setProjectName(changes.getProjectName());
+		}
+
+		if (Objects.nonNull(changes.getEstimatedHours())) {
+			project.setEstimatedHours(changes.getEstimatedHours());
+		}
+
+		if (Objects.nonNull(changes.getActualHours())) {
+			project.setActualHours(changes.getActualHours());
+		}
+
+		if (Objects.nonNull(changes.getDifficulty())) {
+			project.setDifficulty(changes.getDifficulty());
+		}
+
+		if (Objects.nonNull(changes.getNotes())) {
+			project.setNotes(changes.getNotes());
+		}
+
+		projectService.modifyProjectDetails(project);
+
+		try (Writer out = startResponse(exchange, 200)) {
+			ProjectJson.writeProject(out, projectService.fetchProjectById(projectId));
+		}
+	}
+
+	private void deleteProject(HttpExchange exchange, Integer projectId) throws IOException {
+		// a project that is not there, or was deleted by another request first, is a 404
+		projectService.deleteProject(projectId);
+
+		exchange.sendResponseHeaders(204, -1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+
+			if (body.length > MAX_BODY_BYTES) {
+				throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+			}
+
+			if (Json.parse(new String(body, StandardCharsets.UTF_8)) instanceof Map<?, ?> json) {
+				return (Map<String, Object>)json;
+			}
+
+			throw new IllegalArgumentException("Request body must be a JSON object");
+		}
+	}
+
+	// length 0 selects chunked encoding, so the body goes out as it is written
+	private Writer startResponse(HttpExchange exchange, int status) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, 0);
+
+		return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+	}
+
+	// a unique key or foreign key refused the write, the SQL state class 23 covers every driver
+	private static boolean isConstraintViolation(Throwable e) {
+		for (Throwable cause = e; Objects.nonNull(cause); cause = cause.getCause()) {
+			if (cause instanceof SQLException sqlException && Objects.nonNull(sqlException.getSQLState())
+					&& sqlException.getSQLState().startsWith("23")) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// the error text stays in the log, it can quote SQL and driver details the client has no business seeing
+	private void sendServerError(HttpExchange exchange, Throwable e) throws IOException {
+		System.out.println("Request " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + " failed: " + e);
+		sendError(exchange, 500, "Internal error");
+	}
+
+	private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		if (exchange.getResponseCode() != -1) {
+			// the response has already started, all that can be done is to cut it short
+			return;
+		}
+
+		StringBuilder body = new StringBuilder("{\"error\":");
+		Json.writeValue(body, message);
+		body.append('}');
+
+		try (Writer out = startResponse(exchange, status)) {
+			out.write(body.toString());
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package projects.web;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import projects.entity.Amounts;
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+
+/**
+ * Converts projects to and from the JSON used by {@link ProjectHttpServer}. Field names match the
+ * entity properties. Projects are written straight to the output so a listing can be streamed one
+ * row at a time. The importer reads JSON lines files in the same format through
+ * {@link #parseProject(String)}.
+ */
+public final class ProjectJson {
+	private ProjectJson() {
+	}
+
+	// the summary fields only, as used in listings, with the same names as the project fields
+	static void writeProjectSummary(Appendable out, ProjectSummary summary) {
+		append(out, "{");
+		field(out, "projectId", summary.projectId(), true);
+		field(out, "projectName", summary.projectName(), false);
+		field(out, "estimatedHours", summary.estimatedHours(), false);
+		field(out, "actualHours", summary.actualHours(), false);
+		field(out, "difficulty", summary.difficulty(), false);
+		append(out, "}");
+	}
+
+	// the project with its materials, steps and categories
+	static void writeProject(Appendable out, Project project) {
+		append(out, "{");
+		writeRowFields(out, project);
+
+		append(out, ",\"materials\":[");
+		String separator = "";
+
+		for (Material material : project.getMaterials()) {
+			append(out, separator);
+			append(out, "{");
+			field(out, "materialId", material.getMaterialId(), true);
+			field(out, "materialName", material.getMaterialName(), false);
+			field(out, "numRequired", material.getNumRequired(), false);
+			field(out, "cost", material.getCost(), false);
+			append(out, "}");
+			separator = ",";
+		}
+
+		append(out, "],\"steps\":[");
+		separator = "";
+
+		for (Step step : project.getSteps()) {
+			append(out, separator);
+			append(out, "{");
+			field(out, "stepId", step.getStepId(), true);
+			field(out, "stepText", step.getStepText(), false);
+			field(out, "stepOrder", step.getStepOrder(), false);
+			append(out, "}");
+			separator = ",";
+		}
+
+		append(out, "],\"categories\":[");
+		separator = "";
+
+		for (Category category : project.getCategories()) {
+			append(out, separator);
+			append(out, "{");
+			field(out, "categoryId", category.getCategoryId(), true);
+			field(out, "categoryName", category.getCategoryName(), false);
+			append(out, "}");
+			separator = ",";
+		}
+
+		append(out, "]}");
+	}
+
+	private static void writeRowFields(Appendable out, Project project) {
+		field(out, "projectId", project.getProjectId(), true);
+		field(out, "projectName", project.getProjectName(), false);
+		field(out, "estimatedHours", project.getEstimatedHours(), false);
+		field(out, "actualHours", project.getActualHours(), false);
+		field(out, "difficulty", project.getDifficulty(), false);
+		field(out, "notes", project.getNotes(), false);
+	}
+
+	private static void field(Appendable out, String name, Object value, boolean first) {
+		append(out, first ? "\"" : ",\"");
+		append(out, name);
+		append(out, "\":");
+		Json.writeValue(out, value);
+	}
+
+	private static void append(Appendable out, String text) {
+		try {
+			out.append(text);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Builds a project from one JSON object, as {@link #readProject(Map)} does.
+	 *
+	 * @throws IllegalArgumentException Thrown if the text is not a JSON object or a field has the
+	 *                                  wrong type.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Project parseProject(String text) {
+		if (Json.parse(text) instanceof Map<?, ?> json) {
+			return readProject((Map<String, Object>)json);
+		}
+
+		throw new IllegalArgumentException("A project must be a JSON object");
+	}
+
+	/**
+	 * Builds a project from a request body. Only the fields present in the body are set, so an
+	 * update can send just the fields that change. Materials, steps and categories are read when
+	 * present, categories by ID.
+	 *
+	 * @throws IllegalArgumentException Thrown if a field has the wrong type.
+	 */
+	static Project readProject(Map<String, Object> json) {
+		Project project = new Project();
+
+		project.setProjectName(string(json, "projectName"));
+		project.setEstimatedHours(decimal(json, "estimatedHours"));
+		project.setActualHours(decimal(json, "actualHours"));
+		project.setDifficulty(integer(json, "difficulty"));
+		project.setNotes(string(json, "notes"));
+
+		for (Map<String, Object> item : objects(json, "materials")) {
+			Material material = new Material();
+			material.setMaterialName(string(item, "materialName"));
+			material.setNumRequired(integer(item, "numRequired"));
+			material.setCost(decimal(item, "cost"));
+			project.getMaterials().add(material);
+		}
+
+		for (Map<String, Object> item : objects(json, "steps")) {
+			Step step = new Step();
+			step.setStepText(string(item, "stepText"));
+			step.setStepOrder(integer(item, "stepOrder"));
+			project.getSteps().add(step);
+		}
+
+		for (Map<String, Object> item : objects(json, "categories")) {
+			Category category = new Category();
+			category.setCategoryId(integer(item, "categoryId"));
+			project.getCategories().add(category);
+		}
+
+		return project;
+	}
+
+	private static String string(Map<String, Object> json, String name) {
+		Object value = json.get(name);
+
+		if (Objects.isNull(value) || value instanceof String) {
+			return (String)value;
+		}
+
+		throw new IllegalArgumentException(name + " must be a string");
+	}
+
+	// hours and costs are kept to two decimal places, as in the menu application
+	private static BigDecimal decimal(Map<String, Object> json, String name) {
+		Object value = json.get(name);
+
+		if (Objects.isNull(value)) {
+			return null;
+		}
+
+		if (value instanceof BigDecimal decimal) {
+			try {
+				return Amounts.toColumnScale(decimal);
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException(name + " " + e.getMessage());
+			}
+		}
+
+		throw new IllegalArgumentException(name + " must be a number");
+	}
+
+	private static Integer integer(Map<String, Object> json, String name) {
+		Object value = json.get(name);
+
+		if (Objects.isNull(value)) {
+			return null;
+		}
+
+		if (value instanceof BigDecimal decimal) {
+			try {
+				return decimal.intValueExact();
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException(name + " must be a whole number");
+			}
+		}
+
+		throw new IllegalArgumentException(name + " must be a number");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> objects(Map<String, Object> json, String name) {
+		Object value = json.get(name);
+
+		if (Objects.isNull(value)) {
+			return List.of();
+		}
+
+		if (value instanceof List<?> list && list.stream().allMatch(Map.class::isInstance)) {
+			return (List<Map<String, Object>>)list;
+		}
+
+		throw new IllegalArgumentException(name + " must be an array of objects");
+	}
+}
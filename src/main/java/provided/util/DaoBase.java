@@ -3,20 +3,19 @@
  */
 package provided.util;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Time;
-import java.sql.Timestamp;
 import java.sql.Types;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class contains utility methods for the DAO class.
@@ -25,6 +24,14 @@ import java.util.Objects;
  *
  */
 public abstract class DaoBase {
+  private static final LongAdder COMMITS = new LongAdder();
+  private static final LongAdder ROLLBACKS = new LongAdder();
+  private static final LongAdder ROWS_MAPPED = new LongAdder();
+
+  private static final int IN_CLAUSE_STEP = 512;
+
+  private static volatile SlowQueryLog slowQueryLog;
+
   /**
    * This starts a MySQL transaction. Normally MySQL starts a transaction before every request and
    * commits it after each request. By turning auto-commit off, the transaction is only committed
@@ -45,6 +52,7 @@ public abstract class DaoBase {
    */
   protected void commitTransaction(Connection conn) throws SQLException {
     conn.commit();
+    COMMITS.increment();
   }
 
   /**
@@ -55,6 +63,125 @@ public abstract class DaoBase {
    */
   protected void rollbackTransaction(Connection conn) throws SQLException {
     conn.rollback();
+    ROLLBACKS.increment();
+  }
+
+  /**
+   * This prepares a connection for a read that runs a single statement. The connection is marked
+   * read-only and auto-commit is left on, so there is no transaction to start, commit or forget to
+   * end. MySQL runs the statement as an auto-commit, non-locking read, which takes no locks, is
+   * given no transaction ID and releases its read view as soon as the statement finishes. Nothing
+   * needs to be done after the read; the pool clears the read-only flag when the connection is
+   * returned.
+   *
+   * @param conn The connection on which the read runs.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected void startReadOnly(Connection conn) throws SQLException {
+    conn.setReadOnly(true);
+  }
+
+  /**
+   * This starts a read-only transaction, for reads that need several statements to see the same
+   * snapshot of the data. It must be ended with {@link #endReadOnlyTransaction(Connection)}, or
+   * rolled back if the read fails, so the read view is released right away instead of staying open
+   * until the connection is next used.
+   *
+   * @param conn The connection on which to start the transaction.
+   * @throws SQLException Thrown if an error occurs starting the transaction.
+   */
+  protected void startReadOnlyTransaction(Connection conn) throws SQLException {
+    conn.setReadOnly(true);
+    conn.setAutoCommit(false);
+  }
+
+  /**
+   * This ends a transaction started with {@link #startReadOnlyTransaction(Connection)} and puts the
+   * connection back in auto-commit mode.
+   *
+   * @param conn The connection on which to end the transaction.
+   * @throws SQLException Thrown if an error occurs ending the transaction.
+   */
+  protected void endReadOnlyTransaction(Connection conn) throws SQLException {
+    conn.commit();
+    COMMITS.increment();
+    conn.setAutoCommit(true);
+  }
+
+  /**
+   * This prepares a statement, reusing a cached one if the connection has a
+   * {@link StatementCache}. Pooled connections carry a cache for their physical connection, so
+   * repeated calls with the same SQL skip the parse and prepare. The statement must be closed as
+   * usual; for a cached statement that returns it to the cache. Connections without a cache get a
+   * plain prepared statement. If a {@link QueryScope} is entered on the current thread, the
+   * statement gets the scope's timeout and can be cancelled through it. If a slow statement
+   * threshold is set, the statement's executions are timed by the {@link SlowQueryLog}.
+   * 
+   * @param conn The connection.
+   * @param sql The SQL. For the cache to work well this should be a constant template with
+   *        parameters, not SQL with values concatenated into it.
+   * @return The prepared statement.
+   * @throws SQLException Thrown if the statement cannot be prepared.
+   */
+  protected PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+    return prepareStatement(conn, sql, Statement.NO_GENERATED_KEYS);
+  }
+
+  /**
+   * This prepares a statement as {@link #prepareStatement(Connection, String)} does, with control
+   * over whether generated keys are returned.
+   * 
+   * @param conn The connection.
+   * @param sql The SQL.
+   * @param autoGeneratedKeys Either {@link Statement#RETURN_GENERATED_KEYS} or
+   *        {@link Statement#NO_GENERATED_KEYS}.
+   * @return The prepared statement.
+   * @throws SQLException Thrown if the statement cannot be prepared.
+   */
+  protected PreparedStatement prepareStatement(Connection conn, String sql, int autoGeneratedKeys)
+      throws SQLException {
+    PreparedStatement stmt;
+
+    if(conn instanceof StatementCache.Holder holder
+        && Objects.nonNull(holder.getStatementCache())) {
+      stmt = holder.getStatementCache().prepare(sql, autoGeneratedKeys);
+    }
+    else {
+      stmt = conn.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    return track(stmt, sql);
+  }
+
+  /**
+   * This prepares a forward-only, read-only statement for reading a large result a row at a time.
+   * It is never taken from the {@link StatementCache}, so a streaming fetch size set on it cannot
+   * stick to a statement that is reused later. Otherwise it is treated as
+   * {@link #prepareStatement(Connection, String)} treats a statement: it gets the timeout of the
+   * current {@link QueryScope} and can be cancelled through it, and it is timed by the
+   * {@link SlowQueryLog}.
+   * 
+   * @param conn The connection.
+   * @param sql The SQL.
+   * @return The prepared statement, which must be closed as usual.
+   * @throws SQLException Thrown if the statement cannot be prepared.
+   */
+  protected PreparedStatement prepareStreamingStatement(Connection conn, String sql)
+      throws SQLException {
+    return track(
+        conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY), sql);
+  }
+
+  private PreparedStatement track(PreparedStatement stmt, String sql) throws SQLException {
+    SlowQueryLog log = slowQueryLog;
+
+    if(Objects.nonNull(log)) {
+      stmt = log.track(stmt, sql);
+    }
+
+    QueryScope scope = QueryScope.current();
+
+    return Objects.isNull(scope) ? stmt : scope.track(stmt);
   }
 
   /**
@@ -92,6 +219,10 @@ public abstract class DaoBase {
           stmt.setInt(parameterIndex, (Integer)value);
           break;
 
+        case Types.BIGINT:
+          stmt.setLong(parameterIndex, (Long)value);
+          break;
+
         case Types.OTHER:
           stmt.setObject(parameterIndex, value);
           break;
@@ -117,6 +248,10 @@ public abstract class DaoBase {
       return Types.INTEGER;
     }
 
+    if(Long.class.equals(classType)) {
+      return Types.BIGINT;
+    }
+
     if(String.class.equals(classType)) {
       return Types.VARCHAR;
     }
@@ -136,6 +271,95 @@ public abstract class DaoBase {
     throw new DaoException("Unsupported class type: " + classType.getName());
   }
 
+  /**
+   * This builds the parameter placeholders for an IN clause. For example, a count of 3 returns
+   * "?, ?, ?", so that the SQL can be written as "WHERE id IN (" + inClausePlaceholders(3) + ")".
+   *
+   * @param count The number of placeholders. This must be at least one, since "IN ()" is not valid
+   *        SQL.
+   * @return The comma-separated placeholders.
+   */
+  protected String inClausePlaceholders(int count) {
+    if(count < 1) {
+      throw new DaoException("An IN clause needs at least one value");
+    }
+
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  /**
+   * This rounds the number of values in an IN clause up to one of a few sizes: a power of two up to
+   * {@value #IN_CLAUSE_STEP}, then a multiple of it. Writing the SQL for the rounded size, and
+   * filling the extra placeholders with {@link #setInClauseParameters}, means lists of any length
+   * share a handful of SQL texts, so they are reused from the {@link StatementCache} instead of
+   * each length preparing its own statement and pushing others out.
+   *
+   * @param count The number of values, at least one.
+   * @return The number of placeholders to write.
+   */
+  protected static int inClauseSize(int count) {
+    if(count < 1) {
+      throw new DaoException("An IN clause needs at least one value");
+    }
+
+    if(count > IN_CLAUSE_STEP) {
+      return (count + IN_CLAUSE_STEP - 1) / IN_CLAUSE_STEP * IN_CLAUSE_STEP;
+    }
+
+    return count == 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+  }
+
+  /**
+   * This sets the values of an IN clause written with {@link #inClauseSize(int)} placeholders. The
+   * last value is repeated in the extra placeholders, which does not change what the clause
+   * matches.
+   *
+   * @param <T> The value type.
+   * @param stmt The prepared statement.
+   * @param parameterIndex The one-based index of the first placeholder of the IN clause.
+   * @param values The values, at least one.
+   * @param classType The Java class type of the values, as for
+   *        {@link #setParameter(PreparedStatement, int, Object, Class)}.
+   * @return The index of the parameter after the IN clause.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected <T> int setInClauseParameters(PreparedStatement stmt, int parameterIndex,
+      List<? extends T> values, Class<T> classType) throws SQLException {
+    int size = inClauseSize(values.size());
+    T last = values.get(values.size() - 1);
+
+    for(int index = 0; index < size; index++) {
+      setParameter(stmt, parameterIndex + index, index < values.size() ? values.get(index) : last,
+          classType);
+    }
+
+    return parameterIndex + size;
+  }
+
+  /**
+   * This splits a list into consecutive sub-lists of at most the given size. It is used to keep
+   * IN clauses and batches to a bounded number of parameters. The sub-lists are views of the given
+   * list.
+   *
+   * @param <E> The list element type.
+   * @param values The list to split.
+   * @param chunkSize The largest number of elements in a chunk.
+   * @return The chunks in order. An empty list returns no chunks.
+   */
+  protected static <E> List<List<E>> chunk(List<E> values, int chunkSize) {
+    if(chunkSize < 1) {
+      throw new DaoException("Chunk size must be at least one: " + chunkSize);
+    }
+
+    List<List<E>> chunks = new ArrayList<>();
+
+    for(int from = 0; from < values.size(); from += chunkSize) {
+      chunks.add(values.subList(from, Math.min(from + chunkSize, values.size())));
+    }
+
+    return chunks;
+  }
+
   /**
    * This retrieves the number of child rows and adds one to the value. It is used to set the order
    * of a child row. For a *real* application, a more sophisticated approach is desired. This method
@@ -169,17 +393,21 @@ public abstract class DaoBase {
    * This returns the integer primary key value of the last row inserted into the given table. It
    * allows the ID to be inserted into the entity object after inserting it into the table.
    * 
-   * The other way of doing this is to call {@link Statement#getGeneratedKeys()}, but this returns a
-   * result set that needs to be parsed for the ID. It's not really any easier than this approach
-   * but should be closer to database-agnostic.
+   * The other way of doing this is to call {@link Statement#getGeneratedKeys()}, which returns the
+   * keys with the INSERT itself and saves a round trip. The DAO uses that approach for inserts;
+   * this method costs a second query.
+   * 
+   * LAST_INSERT_ID() is tracked per connection, so it is selected on its own. Selecting it FROM the
+   * table would return one row for every row in the table.
    * 
    * @param conn The connection
-   * @param table The name of the table on which to get the last inserted primary key value
+   * @param table The name of the table on which to get the last inserted primary key value. It is
+   *        not needed by MySQL and is kept so existing callers still compile.
    * @return The primary key value
    * @throws SQLException Thrown if an error occurs
    */
   protected Integer getLastInsertId(Connection conn, String table) throws SQLException {
-    String sql = String.format("SELECT LAST_INSERT_ID() FROM %s", table);
+    String sql = "SELECT LAST_INSERT_ID()";
 
     try(Statement stmt = conn.createStatement()) {
       try(ResultSet rs = stmt.executeQuery(sql)) {
@@ -194,15 +422,16 @@ public abstract class DaoBase {
 
   /**
    * This extracts an object of the given type from a result set. The object must have a
-   * zero-argument constructor. It builds an object from a result set using reflection as follows:
+   * zero-argument constructor. The work is done by a {@link RowMapper} that is built once per class
+   * and cached:
    * <ol>
-   * <li>The zero-argument constructor is obtained.</li>
-   * <li>An object of the given class type is created.</li>
-   * <li>A list of fields is obtained using reflection.</li>
+   * <li>The zero-argument constructor and a setter handle for each field are looked up once.</li>
    * <li>The field name is converted from Java naming to SQL naming conventions (camel case to snake
    * case). Obviously, for this to work, the Java name must match the column name. So, if the Java
    * name is numServings, the column name must be num_servings.</li>
-   * <li>The value is assigned to the field in the object.</li>
+   * <li>The fields are bound to column indexes once for each column layout the mapper sees.</li>
+   * <li>For each row, each bound value is read with an indexed getter and assigned to the field in
+   * the object.</li>
    * </ol>
    * 
    * Example: if a query returns values for a recipe, a Recipe object is returned. So:
@@ -232,67 +461,67 @@ public abstract class DaoBase {
    */
   protected <T> T extract(ResultSet rs, Class<T> classType) {
     try {
-      /* Obtain the constructor and create an object of the correct type. */
-      Constructor<T> con = classType.getConstructor();
-      T obj = con.newInstance();
-
-      /* Get the list of fields and loop through them. */
-      for(Field field : classType.getDeclaredFields()) {
-        String colName = camelCaseToSnakeCase(field.getName());
-        Class<?> fieldType = field.getType();
-
-        /*
-         * Set the field accessible flag which means that we can populate even private fields
-         * without using the setter.
-         */
-        field.setAccessible(true);
-        Object fieldValue = null;
-
-        try {
-          fieldValue = rs.getObject(colName);
-        }
-        catch(SQLException e) {
-          /*
-           * An exception caught here means that the field name isn't in the result set. Don't take
-           * any action.
-           */
-        }
-
-        /*
-         * Only set the value in the object if there is a value with the same name in the result
-         * set. This will preserve instance variables (like lists) that are assigned values when the
-         * object is created.
-         */
-        if(Objects.nonNull(fieldValue)) {
-          /*
-           * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
-           */
-          if(fieldValue instanceof Time && fieldType.equals(LocalTime.class)) {
-            fieldValue = ((Time)fieldValue).toLocalTime();
-          }
-          else if(fieldValue instanceof Timestamp && fieldType.equals(LocalDateTime.class)) {
-            fieldValue = ((Timestamp)fieldValue).toLocalDateTime();
-          }
-
-          field.set(obj, fieldValue);
-        }
-      }
-
-      return obj;
-
+      T row = RowMapper.forClass(classType).map(rs);
+      ROWS_MAPPED.increment();
+      return row;
+    }
+    catch(DaoException e) {
+      throw e;
     }
     catch(Exception e) {
       throw new DaoException("Unable to create object of type " + classType.getName(), e);
     }
   }
 
+  /**
+   * This turns on the slow statement log for every DAO. Each statement prepared after this call
+   * that takes at least the threshold to execute is logged and added to the log's totals. Timing
+   * costs a little on every statement, so it is off until a threshold is set.
+   * 
+   * @param thresholdMillis The threshold in milliseconds. Zero or less turns the log off.
+   * @return The new log, or null if the log was turned off.
+   */
+  public static SlowQueryLog setSlowStatementThresholdMillis(long thresholdMillis) {
+    slowQueryLog = thresholdMillis > 0 ? new SlowQueryLog(thresholdMillis) : null;
+    return slowQueryLog;
+  }
+
+  /**
+   * @return The slow statement log, or null if no threshold is set.
+   */
+  public static SlowQueryLog getSlowQueryLog() {
+    return slowQueryLog;
+  }
+
+  /**
+   * @return The number of transactions committed through {@link DaoBase} by all DAOs since the JVM
+   *         started, read-only transactions included.
+   */
+  public static long getCommitCount() {
+    return COMMITS.sum();
+  }
+
+  /**
+   * @return The number of transactions rolled back through {@link DaoBase} by all DAOs.
+   */
+  public static long getRollbackCount() {
+    return ROLLBACKS.sum();
+  }
+
+  /**
+   * @return The number of rows turned into objects by {@link #extract(ResultSet, Class)}.
+   */
+  public static long getRowsMapped() {
+    return ROWS_MAPPED.sum();
+  }
+
   /**
    * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
    * 
    * @param identifier The name in camel case to convert.
    * @return The name converted to snake case.
    */
-  private String camelCaseToSnakeCase(String identifier) {
+  static String camelCaseToSnakeCase(String identifier) {
     StringBuilder nameBuilder = new StringBuilder();
 
     for(char ch : identifier.toCharArray()) {
@@ -0,0 +1,179 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class carries a deadline and a cancel signal from the code that started a piece of work
+ * down to the statements the work runs. A scope is entered on the thread doing the work. While it
+ * is entered, every statement prepared through {@link DaoBase} is given a query timeout that ends
+ * at the deadline and is tracked until it is closed. Cancelling the scope, from any thread, calls
+ * {@link Statement#cancel()} on the statements that are still open, which stops a running query on
+ * the server, and makes any further statement in the scope fail at once.
+ *
+ * A statement stops being tracked when it is closed, and its query timeout is cleared, so a
+ * statement that goes back to a statement cache or a connection that goes back to a pool is never
+ * cancelled on behalf of a later user.
+ *
+ * @author Promineo
+ *
+ */
+public class QueryScope {
+  private static final ThreadLocal<QueryScope> CURRENT = new ThreadLocal<>();
+
+  private final long deadlineNanos;
+  private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelled;
+
+  /**
+   * @param timeoutMillis The time the work may take, starting now. Zero or less means no deadline.
+   */
+  public QueryScope(long timeoutMillis) {
+    this.deadlineNanos =
+        timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+  }
+
+  /**
+   * @return The scope entered on the current thread, or null if there is none.
+   */
+  public static QueryScope current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * This makes this the current scope for the calling thread. It must be paired with
+   * {@link #exit()} in a finally block.
+   */
+  public void enter() {
+    CURRENT.set(this);
+  }
+
+  public void exit() {
+    CURRENT.remove();
+  }
+
+  /**
+   * This cancels the work. Open statements are cancelled and no new ones can be run in the scope.
+   * Calling it after the work has finished does nothing.
+   */
+  public void cancel() {
+    cancelled = true;
+
+    for(Statement stmt : statements) {
+      try {
+        stmt.cancel();
+      }
+      catch(SQLException e) {
+        /* The statement may have finished on its own in the meantime. */
+      }
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * This applies the scope to a newly prepared statement: the query timeout is set to the time left
+   * and the statement is tracked until it is closed.
+   *
+   * @param stmt The statement.
+   * @return A statement that must be used in place of the one passed in.
+   * @throws SQLException Thrown if the scope has been cancelled or its deadline has passed. The
+   *         statement is closed in that case.
+   */
+  PreparedStatement track(PreparedStatement stmt) throws SQLException {
+    try {
+      checkNotDone();
+
+      if(deadlineNanos != 0) {
+        long remaining = deadlineNanos - System.nanoTime();
+        stmt.setQueryTimeout((int)Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + 999_999_999)));
+      }
+    }
+    catch(SQLException e) {
+      stmt.close();
+      throw e;
+    }
+
+    statements.add(stmt);
+
+    return (PreparedStatement)Proxy.newProxyInstance(QueryScope.class.getClassLoader(),
+        new Class<?>[] {PreparedStatement.class}, new TrackedHandler(stmt));
+  }
+
+  private void checkNotDone() throws SQLException {
+    if(cancelled) {
+      throw new SQLException("The query was cancelled");
+    }
+
+    if(deadlineNanos != 0 && deadlineNanos - System.nanoTime() <= 0) {
+      throw new SQLTimeoutException("The query timed out before it was run");
+    }
+  }
+
+  /*
+   * Passes every call through, except close(), which stops tracking the statement and clears its
+   * timeout before closing it.
+   */
+  private class TrackedHandler implements InvocationHandler {
+    private final PreparedStatement stmt;
+
+    private TrackedHandler(PreparedStatement stmt) {
+      this.stmt = stmt;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch(method.getName()) {
+        case "close":
+          if(statements.remove(stmt) && deadlineNanos != 0 && !stmt.isClosed()) {
+            stmt.setQueryTimeout(0);
+          }
+          stmt.close();
+          return null;
+
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        case "toString":
+          return "Tracked" + stmt;
+
+        default:
+          if(method.getName().startsWith("execute")) {
+            checkNotDone();
+          }
+
+          try {
+            return method.invoke(stmt, args);
+          }
+          catch(InvocationTargetException e) {
+            throw e.getCause();
+          }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QueryScope[cancelled=" + cancelled + ", open statements=" + statements.size()
+        + (deadlineNanos == 0 ? "" : ", ms left="
+            + TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()))
+        + "]";
+  }
+}
@@ -0,0 +1,472 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.JDBCType;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class finds the statements that make DAO calls slow. When a threshold is set,
+ * {@link DaoBase} hands out prepared statements that time each execution and count the rows it
+ * returns or changes. A statement that takes at least the threshold is logged with its SQL
+ * template, the types of its bound parameters (never the values), the time it took and its row
+ * count.
+ *
+ * Slow statements are also added up by SQL template, so the templates that cost the most in total
+ * can be listed with {@link #getOffenders()}. The first time a template is slow, its plan is
+ * captured by running EXPLAIN with the same parameters on the same connection, and kept with the
+ * template. That happens once per template, so the cost of the extra statement is paid only once.
+ *
+ * The time measured is the time spent in execute. With the MySQL driver's default fetch mode, that
+ * includes reading every row of a query's result from the server.
+ *
+ * @author Promineo
+ *
+ */
+public class SlowQueryLog {
+  private final long thresholdNanos;
+  private final Map<String, Offender> offenders = new ConcurrentHashMap<>();
+
+  /**
+   * @param thresholdMillis Statements that take at least this long are logged.
+   */
+  public SlowQueryLog(long thresholdMillis) {
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+  }
+
+  public long getThresholdMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+  }
+
+  /**
+   * This wraps a statement so its executions are timed.
+   *
+   * @param stmt The statement.
+   * @param sql The SQL template the statement was prepared with.
+   * @return A statement to use in place of the one passed in.
+   */
+  PreparedStatement track(PreparedStatement stmt, String sql) {
+    return (PreparedStatement)Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+        new Class<?>[] {PreparedStatement.class}, new TimedStatementHandler(stmt, sql));
+  }
+
+  /**
+   * @return The templates that have been slow, the ones with the most total time first.
+   */
+  public List<Offender> getOffenders() {
+    List<Offender> list = new ArrayList<>(offenders.values());
+    Map<Offender, Long> totals = new IdentityHashMap<>();
+
+    /* Sort on a snapshot, the totals can change while the sort runs. */
+    for(Offender offender : list) {
+      totals.put(offender, offender.getTotalNanos());
+    }
+
+    list.sort(Comparator.comparing(totals::get, Comparator.reverseOrder()));
+    return list;
+  }
+
+  public void clear() {
+    offenders.clear();
+  }
+
+  /*
+   * Called when an execution has finished and its rows have been counted.
+   */
+  private void finished(PreparedStatement stmt, String sql, List<String> parameterTypes,
+      Map<Integer, Object> parameters, boolean batch, long nanos, long rows) {
+    if(nanos < thresholdNanos) {
+      return;
+    }
+
+    System.out.println(String.format("Slow statement (%.1fms, %d rows): %s %s", nanos / 1e6, rows,
+        sql.replaceAll("\\s+", " ").trim(), describe(parameterTypes)));
+
+    Offender offender = offenders.computeIfAbsent(sql, Offender::new);
+
+    if(offender.record(nanos, rows, parameterTypes)) {
+      offender.plan = batch ? "not captured for batches" : explain(stmt, sql, parameters);
+    }
+  }
+
+  /*
+   * List the parameter types with runs of the same type collapsed, so an IN clause with hundreds of
+   * placeholders reads [Int x500] rather than filling the log.
+   */
+  private static String describe(List<String> types) {
+    StringBuilder description = new StringBuilder("[");
+    int index = 0;
+
+    while(index < types.size()) {
+      String type = types.get(index);
+      int run = 1;
+
+      while(index + run < types.size() && types.get(index + run).equals(type)) {
+        run++;
+      }
+
+      description.append(index == 0 ? "" : ", ").append(type).append(run > 1 ? " x" + run : "");
+      index += run;
+    }
+
+    return description.append(']').toString();
+  }
+
+  /*
+   * Run EXPLAIN for the statement with the same parameters and turn the plan into text. Only
+   * single statements can be explained; anything else, or any error, is recorded as the reason
+   * there is no plan.
+   */
+  private static String explain(PreparedStatement stmt, String sql, Map<Integer, Object> parameters) {
+    String trimmed = sql.trim();
+    String verb = trimmed.split("\\s+", 2)[0].toUpperCase(Locale.ROOT);
+
+    if(!List.of("SELECT", "INSERT", "UPDATE", "DELETE").contains(verb) || trimmed.contains(";")) {
+      return "not captured for " + verb + " statements";
+    }
+
+    try {
+      Connection conn = stmt.getConnection();
+
+      try(PreparedStatement explain = conn.prepareStatement("EXPLAIN " + trimmed)) {
+        for(Map.Entry<Integer, Object> parameter : parameters.entrySet()) {
+          explain.setObject(parameter.getKey(), parameter.getValue());
+        }
+
+        try(ResultSet rs = explain.executeQuery()) {
+          return planToText(rs);
+        }
+      }
+    }
+    catch(SQLException e) {
+      return "EXPLAIN failed: " + e.getMessage();
+    }
+  }
+
+  private static String planToText(ResultSet rs) throws SQLException {
+    ResultSetMetaData meta = rs.getMetaData();
+    StringBuilder plan = new StringBuilder();
+
+    while(rs.next()) {
+      if(plan.length() > 0) {
+        plan.append('\n');
+      }
+
+      for(int column = 1; column <= meta.getColumnCount(); column++) {
+        if(column > 1) {
+          plan.append(", ");
+        }
+
+        plan.append(meta.getColumnLabel(column)).append('=').append(rs.getString(column));
+      }
+    }
+
+    return plan.toString();
+  }
+
+  /**
+   * The slow executions of one SQL template, added up.
+   */
+  public static class Offender {
+    private final String sql;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long maxRows;
+    private List<String> parameterTypes = List.of();
+    private volatile String plan;
+
+    private Offender(String sql) {
+      this.sql = sql;
+    }
+
+    // returns true for the first slow execution, which is the one whose plan is captured
+    private synchronized boolean record(long nanos, long rows, List<String> parameterTypes) {
+      count++;
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+      maxRows = Math.max(maxRows, rows);
+      this.parameterTypes = parameterTypes;
+
+      return count == 1;
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    public synchronized long getCount() {
+      return count;
+    }
+
+    public synchronized long getTotalNanos() {
+      return totalNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+      return maxNanos;
+    }
+
+    public synchronized long getMaxRows() {
+      return maxRows;
+    }
+
+    public synchronized List<String> getParameterTypes() {
+      return parameterTypes;
+    }
+
+    /**
+     * @return The EXPLAIN output from the first slow execution, one line per plan row, or the
+     *         reason there is none. Null until the plan has been captured.
+     */
+    public String getPlan() {
+      return plan;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("%d slow, total %.1fms, max %.1fms, max rows %d: %s %s", count,
+          totalNanos / 1e6, maxNanos / 1e6, maxRows, sql.replaceAll("\\s+", " ").trim(),
+          describe(parameterTypes));
+    }
+  }
+
+  /*
+   * Records the parameters as they are bound, times each execution and counts its rows. A query's
+   * rows are counted as the result set is read, so the execution is finished when the result set
+   * is closed, or when the statement is closed or run again if the caller never closes it.
+   */
+  private class TimedStatementHandler implements InvocationHandler {
+    private final PreparedStatement stmt;
+    private final String sql;
+    private final Map<Integer, Object> parameters = new TreeMap<>();
+    private final Map<Integer, String> parameterTypes = new TreeMap<>();
+    private final List<String> batchTypes = new ArrayList<>();
+    private boolean batch;
+    private Execution pending;
+
+    private TimedStatementHandler(PreparedStatement stmt, String sql) {
+      this.stmt = stmt;
+      this.sql = sql;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+
+      switch(name) {
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        case "toString":
+          return "Timed" + stmt;
+
+        case "close":
+          finishPending();
+          break;
+
+        case "clearParameters":
+          parameters.clear();
+          parameterTypes.clear();
+          break;
+
+        case "addBatch":
+          batch = true;
+          if(batchTypes.isEmpty()) {
+            batchTypes.addAll(parameterTypes.values());
+          }
+          break;
+
+        case "clearBatch":
+          batch = false;
+          batchTypes.clear();
+          break;
+
+        default:
+          if(name.startsWith("set") && Objects.nonNull(args) && args.length >= 2
+              && args[0] instanceof Integer index) {
+            recordParameter(name, index, args);
+          }
+          else if(name.startsWith("execute")) {
+            return execute(method, args);
+          }
+      }
+
+      return invokeTarget(method, args);
+    }
+
+    private void recordParameter(String name, Integer index, Object[] args) {
+      if(name.equals("setNull") && args[1] instanceof Integer sqlType) {
+        parameters.put(index, null);
+        parameterTypes.put(index, "NULL " + typeName(sqlType));
+      }
+      else {
+        parameters.put(index, args[1]);
+        parameterTypes.put(index, name.substring(3));
+      }
+    }
+
+    private String typeName(int sqlType) {
+      try {
+        return JDBCType.valueOf(sqlType).getName();
+      }
+      catch(IllegalArgumentException e) {
+        return String.valueOf(sqlType);
+      }
+    }
+
+    private Object execute(Method method, Object[] args) throws Throwable {
+      finishPending();
+
+      List<String> types = batch ? List.copyOf(batchTypes) : List.copyOf(parameterTypes.values());
+      Map<Integer, Object> values = new TreeMap<>(parameters);
+      boolean wasBatch = batch;
+      long start = System.nanoTime();
+      Object result = invokeTarget(method, args);
+      long nanos = System.nanoTime() - start;
+
+      if(wasBatch) {
+        batch = false;
+        batchTypes.clear();
+      }
+
+      if(result instanceof ResultSet rs) {
+        pending = new Execution(types, values, nanos);
+        return Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class}, new CountingResultSetHandler(rs, this));
+      }
+
+      finished(stmt, sql, types, values, wasBatch, nanos, updatedRows(result));
+
+      return result;
+    }
+
+    // an update count, a batch of them or, for execute(), whatever the statement reports
+    private long updatedRows(Object result) throws SQLException {
+      if(result instanceof Integer count) {
+        return Math.max(0, count);
+      }
+
+      if(result instanceof Long count) {
+        return Math.max(0, count);
+      }
+
+      if(result instanceof int[] counts) {
+        long total = 0;
+
+        for(int count : counts) {
+          total += Math.max(0, count);
+        }
+
+        return total;
+      }
+
+      return Math.max(0, stmt.getUpdateCount());
+    }
+
+    private void finishPending() {
+      if(Objects.nonNull(pending)) {
+        Execution execution = pending;
+        pending = null;
+        finished(stmt, sql, execution.types, execution.values, false, execution.nanos,
+            execution.rows);
+      }
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+      try {
+        return method.invoke(stmt, args);
+      }
+      catch(InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  /*
+   * A query whose rows are still being read.
+   */
+  private static class Execution {
+    private final List<String> types;
+    private final Map<Integer, Object> values;
+    private final long nanos;
+    private long rows;
+
+    private Execution(List<String> types, Map<Integer, Object> values, long nanos) {
+      this.types = types;
+      this.values = values;
+      this.nanos = nanos;
+    }
+  }
+
+  /*
+   * Counts the rows read from a result set and finishes the execution when it is closed.
+   */
+  private static class CountingResultSetHandler implements InvocationHandler {
+    private final ResultSet rs;
+    private final TimedStatementHandler statement;
+
+    private CountingResultSetHandler(ResultSet rs, TimedStatementHandler statement) {
+      this.rs = rs;
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch(method.getName()) {
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        case "toString":
+          return "Counting" + rs;
+
+        default:
+          break;
+      }
+
+      Object result;
+
+      try {
+        result = method.invoke(rs, args);
+      }
+      catch(InvocationTargetException e) {
+        throw e.getCause();
+      }
+
+      if(method.getName().equals("next") && Boolean.TRUE.equals(result)
+          && Objects.nonNull(statement.pending)) {
+        statement.pending.rows++;
+      }
+      else if(method.getName().equals("close")) {
+        statement.finishPending();
+      }
+
+      return result;
+    }
+  }
+}
@@ -0,0 +1,338 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class caches prepared statements for one physical connection, keyed by SQL text. Preparing
+ * a statement costs a round trip when server-side prepared statements are used (and client-side
+ * parsing either way), so reusing the statement for the next call with the same SQL skips that
+ * work.
+ *
+ * A cached statement is handed out wrapped so that calling close() on it, as callers normally do
+ * with try-with-resources, does not close the statement. Instead the parameters and any batch are
+ * cleared, the fetch size, row limit and query timeout are put back to their defaults, and the
+ * statement is returned to the cache. The cache is limited to a number of
+ * statements; the least recently used statement is really closed when the limit is passed.
+ *
+ * A statement can only be handed to one caller at a time. If the same SQL is asked for while its
+ * cached statement is still open, an uncached statement is prepared instead.
+ *
+ * Hit, miss and eviction counts are kept for each cache and for all caches together.
+ *
+ * The cache is guarded by a ReentrantLock rather than synchronized, and a statement is prepared
+ * with the lock released, so a virtual thread waiting on the server never pins its carrier thread.
+ *
+ * @author Promineo
+ *
+ */
+public class StatementCache implements AutoCloseable {
+  private static final LongAdder TOTAL_HITS = new LongAdder();
+  private static final LongAdder TOTAL_MISSES = new LongAdder();
+  private static final LongAdder TOTAL_EVICTIONS = new LongAdder();
+
+  private final Connection conn;
+  private final int maxSize;
+  private final LinkedHashMap<String, CachedStatement> statements =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private boolean closed;
+
+  /**
+   * This is implemented by connections, such as pooled connections, that carry a statement cache
+   * for their physical connection. {@link DaoBase} checks for it when preparing statements.
+   */
+  public interface Holder {
+    StatementCache getStatementCache();
+  }
+
+  /**
+   * @param conn The physical connection that the statements are prepared on.
+   * @param maxSize The most statements kept open.
+   */
+  public StatementCache(Connection conn, int maxSize) {
+    this.conn = conn;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * This returns a prepared statement for the given SQL, from the cache if possible.
+   *
+   * @param sql The SQL text.
+   * @param autoGeneratedKeys Either {@link Statement#RETURN_GENERATED_KEYS} or
+   *        {@link Statement#NO_GENERATED_KEYS}.
+   * @return A statement that must be closed by the caller.
+   * @throws SQLException Thrown if the statement cannot be prepared.
+   */
+  public PreparedStatement prepare(String sql, int autoGeneratedKeys)
+      throws SQLException {
+    String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+    boolean cacheable;
+
+    lock.lock();
+
+    try {
+      CachedStatement cached = statements.get(key);
+
+      if(Objects.nonNull(cached) && !cached.inUse) {
+        recordHit();
+        return cached.checkout();
+      }
+
+      /* A statement whose cached copy is in use is prepared uncached. */
+      recordMiss();
+      cacheable = Objects.isNull(cached);
+    }
+    finally {
+      lock.unlock();
+    }
+
+    PreparedStatement stmt = conn.prepareStatement(sql, autoGeneratedKeys);
+
+    lock.lock();
+
+    try {
+      if(!cacheable || closed || maxSize < 1 || statements.containsKey(key)) {
+        return stmt;
+      }
+
+      CachedStatement cached = new CachedStatement(stmt);
+      statements.put(key, cached);
+      evictOverflow();
+
+      return cached.checkout();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /*
+   * Close least recently used statements until the cache is back within its limit. Statements that
+   * are checked out are skipped; they are closed when returned if they were evicted.
+   */
+  private void evictOverflow() {
+    Iterator<CachedStatement> eldest = statements.values().iterator();
+
+    while(statements.size() > maxSize && eldest.hasNext()) {
+      CachedStatement cached = eldest.next();
+
+      if(!cached.inUse) {
+        eldest.remove();
+        cached.evicted = true;
+        closeQuietly(cached.stmt);
+        evictions++;
+        TOTAL_EVICTIONS.increment();
+      }
+    }
+  }
+
+  private void checkin(CachedStatement cached) {
+    lock.lock();
+
+    try {
+      cached.inUse = false;
+
+      if(cached.evicted || closed) {
+        closeQuietly(cached.stmt);
+        return;
+      }
+
+      try {
+        cached.stmt.clearParameters();
+        cached.stmt.clearBatch();
+        cached.stmt.clearWarnings();
+        /* Settings a caller changed must not carry over to the next caller of the same SQL. */
+        cached.stmt.setFetchSize(0);
+        cached.stmt.setMaxRows(0);
+        cached.stmt.setQueryTimeout(0);
+      }
+      catch(SQLException e) {
+        /* A statement that cannot be reset cannot be reused. */
+        statements.values().remove(cached);
+        closeQuietly(cached.stmt);
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void recordHit() {
+    hits++;
+    TOTAL_HITS.increment();
+  }
+
+  private void recordMiss() {
+    misses++;
+    TOTAL_MISSES.increment();
+  }
+
+  /**
+   * This closes every cached statement. It is called before the physical connection is closed.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+
+    try {
+      closed = true;
+
+      for(CachedStatement cached : statements.values()) {
+        if(!cached.inUse) {
+          closeQuietly(cached.stmt);
+        }
+      }
+
+      statements.clear();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    lock.lock();
+
+    try {
+      return statements.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public Stats getStats() {
+    lock.lock();
+
+    try {
+      return new Stats(hits, misses, evictions);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * This returns the counters summed over every statement cache in the JVM.
+   *
+   * @return The totals.
+   */
+  public static Stats getTotalStats() {
+    return new Stats(TOTAL_HITS.sum(), TOTAL_MISSES.sum(), TOTAL_EVICTIONS.sum());
+  }
+
+  private static void closeQuietly(Statement stmt) {
+    try {
+      stmt.close();
+    }
+    catch(SQLException e) {
+      /* The statement is being discarded anyway. */
+    }
+  }
+
+  /**
+   * A snapshot of the cache counters.
+   */
+  public record Stats(long hits, long misses, long evictions) {
+    public double hitRate() {
+      long requests = hits + misses;
+      return requests == 0 ? 0 : (double)hits / requests;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d", hits, misses,
+          hitRate() * 100, evictions);
+    }
+  }
+
+  /*
+   * A cached statement and whether it is currently handed out.
+   */
+  private class CachedStatement {
+    private final PreparedStatement stmt;
+    private boolean inUse;
+    private boolean evicted;
+
+    private CachedStatement(PreparedStatement stmt) {
+      this.stmt = stmt;
+    }
+
+    private PreparedStatement checkout() {
+      inUse = true;
+
+      return (PreparedStatement)Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+          new Class<?>[] {PreparedStatement.class}, new CheckedOutHandler(this));
+    }
+  }
+
+  /*
+   * Passes every call through to the cached statement, except close(), which returns it to the
+   * cache. Each checkout has its own handler, so closing twice or using the statement after
+   * closing it cannot affect the next caller.
+   */
+  private class CheckedOutHandler implements InvocationHandler {
+    private final CachedStatement cached;
+    private boolean returned;
+
+    private CheckedOutHandler(CachedStatement cached) {
+      this.cached = cached;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch(method.getName()) {
+        case "close":
+          if(!returned) {
+            returned = true;
+            checkin(cached);
+          }
+          return null;
+
+        case "isClosed":
+          return returned || cached.stmt.isClosed();
+
+        case "equals":
+          return proxy == args[0];
+
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        case "toString":
+          return "Cached" + cached.stmt;
+
+        default:
+          if(returned) {
+            throw new SQLException("Statement has been returned to the statement cache");
+          }
+
+          try {
+            return method.invoke(cached.stmt, args);
+          }
+          catch(InvocationTargetException e) {
+            throw e.getCause();
+          }
+      }
+    }
+  }
+}
@@ -1,5 +1,6 @@
 //Im adding the DROP TABLE Statements, need to DROp the TABLES in CORRECT ORDER, FOREIGN KEY references to other tables must be DROPPED FIRST 
 
+DROP TABLE IF EXISTS import_checkpoint;
 DROP TABLE IF EXISTS project_category;
 DROP TABLE IF EXISTS material;
 DROP TABLE IF EXISTS step;
@@ -9,17 +10,21 @@ DROP TABLE IF EXISTS project;
 
 // Im writing the CREATE TABLE statements in INVERSE of the order they were DROPPED so im starting with PROJECT
 // Im including AUTO INCREMENTING the PRIMARY KEY Columns, PRIMARY KEY Statements FOreign key statements with ON DELETE CASCADE, need to remember to CLOSE each DROP AND CREATE TABLE with a semicolon
+// project_name is UNIQUE, it's the natural key upsertProjects matches on. InnoDB adds the primary key to the index, so it also serves ORDER BY project_name, project_id
+// project_name uses the binary utf8mb4_0900_bin collation so the index compares names exactly as the Java code does, "Deck" and "deck" are two projects
 // DELETE CASCADE in STEP TABLE MEANS delete all steps associated with a paticular project?
+// project_step_order serves reading a project's steps in order and finding its highest step_order, it also covers the project_id foreign key
 
 CREATE TABLE project(
 	project_id INT NOT NULL AUTO_INCREMENT,
-	project_name VARCHAR(128) NOT NULL,
+	project_name VARCHAR(128) NOT NULL COLLATE utf8mb4_0900_bin,
 	estimated_hours DECIMAL(7,2),
 	actual_hours DECIMAL(7,2,
 	difficulty INT,
 	notes TEXT,
 	
-	PRIMARY KEY (project_id)
+	PRIMARY KEY (project_id),
+	UNIQUE KEY project_name (project_name)
 );	
 
 CREATE TABLE category (
@@ -34,6 +39,7 @@ CREATE TABLE step (
 	step_text TEXT NOT NULL,
 	step_order INT NOT NULL,
 	PRIMARY KEY (step_id),
+	KEY project_step_order (project_id, step_order),
 	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE
 );
 
@@ -59,4 +65,13 @@ CREATE TABLE project_category (
  
  
  
- 
\ No newline at end of file
+ 
+
+// one row per file being imported, written in the same transaction as each chunk so a stopped import resumes where it committed
+CREATE TABLE import_checkpoint (
+ source VARCHAR(512) NOT NULL,
+ byte_offset BIGINT NOT NULL,
+ line_number BIGINT NOT NULL,
+ projects_imported BIGINT NOT NULL,
+ PRIMARY KEY (source)
+);